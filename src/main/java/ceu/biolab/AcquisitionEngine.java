@@ -0,0 +1,200 @@
+package ceu.biolab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/// Owns the read loop of an acquisition and fans the blocks out to FrameSinks.
+/// A dedicated thread reads blocks from the BITalino into a FrameRing and never waits for anybody else;
+/// every sink consumes the ring from its own thread and may lag behind (losing the oldest blocks once it
+/// is more than the ring capacity behind) without ever blocking the reader.
+///
+/// The device must already be started (BITalino.start()) when start() is called, and is left running
+/// when the engine stops; stopping the device remains the caller's job.
+public class AcquisitionEngine {
+
+    /// Default amount of signal held by one block, in ms
+    public static final int DEFAULT_BLOCK_MILLIS = 20;
+
+    /// Default number of blocks a sink may fall behind before blocks are dropped
+    public static final int DEFAULT_RING_CAPACITY = 256;
+
+    /// Time a sink thread sleeps when there is nothing to consume
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private final BITalino bitalino;
+    private final int nChannels;
+    private final int blockSize;
+    private final List<FrameSink> sinks = new ArrayList<>();
+    private final List<Thread> sinkThreads = new ArrayList<>();
+
+    private int ringCapacity = DEFAULT_RING_CAPACITY;
+    private long maxDurationMs = 0;
+    private SampleClock clock = null;
+    private FrameRing ring;
+    private Thread readerThread;
+    private volatile boolean running = false;
+    private volatile Throwable error = null;
+    /// First failure of each sink (thrown by its onBlock() or onStop()), in the order of addSink()
+    private AtomicReferenceArray<Throwable> sinkErrors = new AtomicReferenceArray<>(0);
+
+    /// \param[in] bitalino Device to read from, already started
+    /// \param[in] nChannels Number of analog channels being acquired
+    /// \param[in] blockSize Number of frames per read (see blockSizeFor())
+    public AcquisitionEngine(BITalino bitalino, int nChannels, int blockSize) {
+        this.bitalino = bitalino;
+        this.nChannels = nChannels;
+        this.blockSize = blockSize;
+    }
+
+    /// Block size holding about DEFAULT_BLOCK_MILLIS of signal at the given sampling rate.
+    /// Small enough to keep the latency to the sinks low at 1000 Hz, without making
+    /// one read per frame at low rates.
+    public static int blockSizeFor(int samplingRate) {
+        return blockSizeFor(samplingRate, DEFAULT_BLOCK_MILLIS);
+    }
+
+    /// Block size holding about blockMillis of signal at the given sampling rate (at least 1 frame).
+    public static int blockSizeFor(int samplingRate, int blockMillis) {
+        return Math.max(1, samplingRate * blockMillis / 1000);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /// Sets how many blocks a sink may fall behind before losing data. Must be called before start().
+    public void setRingCapacity(int blocks) {
+        ringCapacity = blocks;
+    }
+
+    /// Stops the acquisition by itself after the given time, 0 for no limit. Must be called before start().
+    public void setMaxDuration(long milliseconds) {
+        maxDurationMs = milliseconds;
+    }
+
+    /// Keeps the given clock up to date with the arrival of the blocks (see SampleClock). If it is not anchored
+    /// yet, it is anchored when the engine starts. Must be called before start().
+    public void setClock(SampleClock clock) {
+        this.clock = clock;
+    }
+
+    public SampleClock getClock() {
+        return clock;
+    }
+
+    /// Adds a consumer of the blocks. Must be called before start().
+    public void addSink(FrameSink sink) {
+        sinks.add(sink);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /// Cause of the end of the acquisition if reading the device failed, null otherwise.
+    public Throwable getError() {
+        return error;
+    }
+
+    /// First exception thrown by a sink, by onBlock() (which ends its consumption) or onStop(); null if it
+    /// has not failed or was not added to this engine. A sink writing a recording that failed has left it
+    /// incomplete.
+    public Throwable getSinkError(FrameSink sink) {
+        int index = sinks.indexOf(sink);
+        return index < 0 || index >= sinkErrors.length() ? null : sinkErrors.get(index);
+    }
+
+    /// Number of blocks read from the device so far.
+    public long getBlocksRead() {
+        return ring == null ? 0 : ring.published();
+    }
+
+    /// Starts the reader and sink threads.
+    public void start() {
+        ring = new FrameRing(ringCapacity, nChannels, blockSize);
+        sinkErrors = new AtomicReferenceArray<>(sinks.size());
+        running = true;
+        for (int k = 0; k < sinks.size(); k++) {
+            FrameSink sink = sinks.get(k);
+            int index = k;
+            Thread t = new Thread(() -> consume(sink, index, ring.newReader()), "bitalino-sink");
+            t.setDaemon(true);
+            sinkThreads.add(t);
+            t.start();
+        }
+        readerThread = new Thread(this::readLoop, "bitalino-reader");
+        readerThread.start();
+    }
+
+    /// Stops reading and waits until every sink has consumed the blocks already read.
+    public void stop() throws InterruptedException {
+        running = false;
+        if (readerThread != null) {
+            readerThread.join();
+        }
+        for (Thread t : sinkThreads) {
+            t.join();
+        }
+    }
+
+    private void readLoop() {
+        long startNanos = System.nanoTime();
+        if (clock != null && !clock.isAnchored()) {
+            clock.anchor(startNanos);
+        }
+        long limitNanos = maxDurationMs > 0 ? maxDurationMs * 1_000_000 : Long.MAX_VALUE;
+        long frames = 0;
+        try {
+            long now = startNanos;
+            while (running && now - startNanos < limitNanos) {
+                FrameBlock block = ring.claim();
+                bitalino.read(block, 0, blockSize);
+                ring.publish();
+                // one clock read per block, shared by the duration limit and the sample clock
+                now = System.nanoTime();
+                frames += blockSize;
+                if (clock != null) {
+                    clock.observe(frames + bitalino.getLostFrames(), now);
+                }
+            }
+        } catch (Throwable ex) {
+            error = ex;
+        } finally {
+            running = false;
+            ring.close();
+        }
+    }
+
+    private void consume(FrameSink sink, int index, FrameRing.Reader reader) {
+        FrameBlock block = new FrameBlock(nChannels, blockSize);
+        Throwable failure = null;
+        try {
+            long dropped = 0;
+            while (true) {
+                boolean closed = ring.isClosed();
+                if (reader.poll(block)) {
+                    if (reader.dropped() != dropped) {
+                        sink.onDropped(reader.dropped() - dropped);
+                        dropped = reader.dropped();
+                    }
+                    sink.onBlock(block);
+                } else if (closed) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            }
+            failure = error;
+        } catch (Throwable ex) {
+            failure = ex;
+            sinkErrors.set(index, ex);
+        }
+        try {
+            sink.onStop(failure);
+        } catch (Throwable ex) {
+            sinkErrors.compareAndSet(index, null, ex);
+        }
+    }
+}
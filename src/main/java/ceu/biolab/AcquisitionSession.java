@@ -0,0 +1,226 @@
+package ceu.biolab;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// Acquires from several BITalino boards at once (e.g. ECG and EMG on different boards of the same patient).
+/// Devices are opened, started and stopped concurrently on virtual threads, each one streams through its
+/// own AcquisitionEngine, and all of them are placed on a common timeline: the start offset of a device is
+/// the time between the first and its own start command, in samples, and from there on its position is
+/// given by its sample counter (with lost frames filled in, see GapFillingSink), not by the host clock.
+/// The SampleClock of each device measures how far its crystal drifts from the host clock meanwhile.
+public class AcquisitionSession {
+
+    /// One board of the session.
+    public static class Device {
+        private final String name;
+        private final BITalino bitalino;
+        private final String macAdd;
+        private final int[] channels;
+        private final List<FrameSink> sinks = new ArrayList<>();
+        private AcquisitionEngine engine;
+        private SampleClock clock;
+        private long startNanos;
+        private long offset;
+        private volatile boolean started = false;
+
+        private Device(String name, BITalino bitalino, String macAdd, int[] channels) {
+            this.name = name;
+            this.bitalino = bitalino;
+            this.macAdd = macAdd;
+            this.channels = channels;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BITalino getBitalino() {
+            return bitalino;
+        }
+
+        public AcquisitionEngine getEngine() {
+            return engine;
+        }
+
+        /// Timestamps of the samples of this device, anchored at its start command.
+        public SampleClock getClock() {
+            return clock;
+        }
+
+        /// Position of the first sample of this device on the session timeline.
+        public long getOffset() {
+            return offset;
+        }
+    }
+
+    private final int samplingRate;
+    private final List<Device> devices = new ArrayList<>();
+    private File mergedFile = null;
+    private MergedRecordingWriter merged = null;
+
+    /// \param[in] samplingRate Sampling rate shared by all the devices (1, 10, 100 or 1000 Hz)
+    public AcquisitionSession(int samplingRate) {
+        this.samplingRate = samplingRate;
+    }
+
+    /// Adds a board to the session. Must be called before open().
+    /// \param[in] name Name identifying the device in the recordings
+    /// \param[in] bitalino Instance used to talk to the device
+    /// \param[in] macAdd Bluetooth MAC address of the device
+    /// \param[in] channels Analog channels to acquire, as in BITalino.start()
+    public Device addDevice(String name, BITalino bitalino, String macAdd, int[] channels) {
+        Device device = new Device(name, bitalino, macAdd, channels);
+        devices.add(device);
+        return device;
+    }
+
+    /// Adds a per-device consumer of the blocks (e.g. its own recording file). Must be called before start().
+    public void addSink(Device device, FrameSink sink) {
+        device.sinks.add(sink);
+    }
+
+    /// Also records all the devices into one CSV file on the common timeline. Must be called before start().
+    public void recordMerged(File file) {
+        mergedFile = file;
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    /// Connects to every device concurrently.
+    public void open() throws BITalinoException, InterruptedException {
+        forEachDevice(device -> {
+            device.bitalino.open(device.macAdd, samplingRate);
+            return null;
+        });
+    }
+
+    /// Starts every device concurrently and the engines reading them.
+    /// If a device fails to start, the devices that did start are stopped again before the failure is thrown.
+    public void start() throws BITalinoException, InterruptedException {
+        try {
+            forEachDevice(device -> {
+                device.bitalino.start(device.channels);
+                device.startNanos = System.nanoTime();
+                device.started = true;
+                return null;
+            });
+        } catch (BITalinoException | InterruptedException e) {
+            for (Device device : devices) {
+                if (device.started) {
+                    try {
+                        device.bitalino.stop();
+                    } catch (Throwable t) {
+                        e.addSuppressed(t);
+                    }
+                    device.started = false;
+                }
+            }
+            throw e;
+        }
+
+        long first = Long.MAX_VALUE;
+        for (Device device : devices) {
+            first = Math.min(first, device.startNanos);
+        }
+        if (mergedFile != null) {
+            merged = new MergedRecordingWriter(mergedFile, samplingRate, devices.size());
+        }
+        int blockSize = AcquisitionEngine.blockSizeFor(samplingRate);
+        for (int d = 0; d < devices.size(); d++) {
+            Device device = devices.get(d);
+            device.offset = Math.round((device.startNanos - first) * samplingRate / 1e9);
+            device.clock = new SampleClock(samplingRate);
+            device.clock.anchor(device.startNanos);
+            device.engine = new AcquisitionEngine(device.bitalino, device.channels.length, blockSize);
+            device.engine.setClock(device.clock);
+            for (FrameSink sink : device.sinks) {
+                device.engine.addSink(sink);
+            }
+            if (merged != null) {
+                FrameSink lane = merged.lane(d, device.name, device.channels, device.offset);
+                device.engine.addSink(new GapFillingSink(lane, GapFillingSink.Mode.INTERPOLATE));
+            }
+        }
+        if (merged != null) {
+            merged.start();
+        }
+        for (Device device : devices) {
+            device.engine.start();
+        }
+    }
+
+    /// Stops the engines and the devices, and waits for the recordings to be complete.
+    public void stop() throws BITalinoException, InterruptedException {
+        for (Device device : devices) {
+            if (device.engine != null) {
+                device.engine.stop();
+            }
+        }
+        if (merged != null) {
+            merged.join();
+        }
+        forEachDevice(device -> {
+            device.bitalino.stop();
+            device.started = false;
+            return null;
+        });
+    }
+
+    /// Disconnects every device concurrently.
+    public void close() throws BITalinoException, InterruptedException {
+        forEachDevice(device -> {
+            device.bitalino.close();
+            return null;
+        });
+    }
+
+    private interface DeviceTask {
+        Void run(Device device) throws Throwable;
+    }
+
+    /// Runs a blocking operation on every device at the same time, one virtual thread per device.
+    /// All the operations are waited for; the first failure is then rethrown, or wrapped as the cause of a
+    /// BITalinoException (UNDEFINED) if it is not one.
+    private void forEachDevice(DeviceTask task) throws BITalinoException, InterruptedException {
+        List<Future<Void>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Device device : devices) {
+                Callable<Void> call = () -> {
+                    try {
+                        return task.run(device);
+                    } catch (Exception | Error e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw undefined(t);
+                    }
+                };
+                results.add(executor.submit(call));
+            }
+        }
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof BITalinoException) {
+                    throw (BITalinoException) e.getCause();
+                }
+                throw undefined(e.getCause());
+            }
+        }
+    }
+
+    private static BITalinoException undefined(Throwable cause) {
+        BITalinoException exception = new BITalinoException(BITalinoErrorTypes.UNDEFINED);
+        exception.initCause(cause);
+        return exception;
+    }
+}
@@ -0,0 +1,118 @@
+package ceu.biolab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/// Writes ASCII text files (TXT and CSV recordings) through a reusable byte buffer and a FileChannel.
+/// Integers are formatted straight into the buffer, so no String or char[] is created per value and
+/// nothing needs charset encoding.
+class AsciiWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /// Longest long plus a separator
+    private static final int MAX_VALUE_BYTES = 21;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final byte[] bytes = buffer.array();
+    private int pos = 0;
+
+    /// Creates (or truncates) the file.
+    AsciiWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /// Appends the decimal representation of a value, as Integer.toString() would write it.
+    void putInt(int value) throws IOException {
+        putLong(value);
+    }
+
+    /// Appends the decimal representation of a value (Long.MIN_VALUE excluded).
+    void putLong(long value) throws IOException {
+        if (pos > BUFFER_BYTES - MAX_VALUE_BYTES) {
+            flush();
+        }
+        if (value < 0) {
+            bytes[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long p = 10; p <= value && digits < 19; p *= 10) {
+            digits++;
+        }
+        for (int d = pos + digits - 1; d >= pos; d--) {
+            bytes[d] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    /// Appends a value rounded to a number of decimals (at most 9), e.g. "-12.50" for (-12.5, 2).
+    void putDecimal(double value, int decimals) throws IOException {
+        long scale = 1;
+        for (int d = 0; d < decimals; d++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            put('-');
+            scaled = -scaled;
+        }
+        putLong(scaled / scale);
+        if (decimals > 0) {
+            put('.');
+            long fraction = scaled % scale;
+            for (long p = scale / 10; p > 0; p /= 10) {
+                put((char) ('0' + fraction / p % 10));
+            }
+        }
+    }
+
+    /// Appends one ASCII character.
+    void put(char c) throws IOException {
+        if (pos == BUFFER_BYTES) {
+            flush();
+        }
+        bytes[pos++] = (byte) c;
+    }
+
+    /// Appends an ASCII string (headers and labels, not meant for per-sample use).
+    void put(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    /// Appends the platform line separator, as BufferedWriter.newLine() does.
+    void newLine() throws IOException {
+        for (byte b : LINE_SEPARATOR) {
+            put((char) b);
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.position(0).limit(pos);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -43,8 +43,6 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.util.Vector;
 import javax.bluetooth.RemoteDevice;
-import javax.microedition.io.Connector;
-import javax.microedition.io.StreamConnection;
 
 
 import ceu.biolab.DeviceDiscoverer;
@@ -58,16 +56,65 @@ public class BITalino {
         /// Number of bytes expected for a frame sent by the device (auxiliary variable)
 	private int number_bytes = 0;
 
-        /// Instance of the Bluetooth socket connection established with the BITalino device
-	private StreamConnection hSocket = null;
+        /// Link used to reach the BITalino device (Bluetooth by default, or a simulated device)
+	private final BITalinoTransport transport;
 
         /// Instance of the data stream with data coming from the BITalino device
 	private DataInputStream iStream = null;
 
         /// Instance of the data stream through which data can be sent to the BITalino device
 	private DataOutputStream oStream = null;
+
+        /// Time (ms) open() keeps probing the device before giving up
+	private int connectTimeout = 5000;
+
+        /// Settle time (ms) after every command, 0 for none
+	private int commandDelay = 0;
+
+        /// Time (ms) to wait for the answer to a single version probe
+	private static final int PROBE_TIMEOUT = 250;
+
+        /// Time (ms) between two checks of the input stream while waiting for an answer
+	private static final int POLL_INTERVAL = 2;
+
+        /// Time (ms) without input after which the answers to repeated probes are taken as all drained
+	private static final int DRAIN_QUIET = 300;
+
+        /// Reusable buffer with the raw bytes of the block being read (auxiliary variable)
+	private byte[] readBuffer = new byte[0];
+
+        /// Block reused by read() to decode frames before converting them to Frame objects (auxiliary variable)
+	private FrameBlock frameBlock = null;
+
+        /// Table sliding the CRC register of a resync window by one byte (auxiliary variable)
+	private byte[] resyncTable = null;
+
+        /// Number of times the stream had to be resynchronised since the acquisition started
+	private long resyncEvents = 0;
+
+        /// Number of bytes skipped while resynchronising since the acquisition started
+	private long skippedBytes = 0;
+
+        /// Listener notified after every resynchronisation, if any
+	private ResyncListener resyncListener = null;
+
+        /// Continuity check of the sequence numbers of the frames read since the acquisition started
+	private final SequenceTracker sequence = new SequenceTracker();
+	
+	public BITalino() 
+	{
+	        /** Creates an instance that connects to a physical %BITalino over Bluetooth.
+	         */
+		this(new BluetoothTransport());
+	}
 	
-	public BITalino() {}
+	public BITalino(BITalinoTransport transport) 
+	{
+	        /** Creates an instance that talks to a %BITalino through the given transport.
+	         * \param[in] transport The link to the device, e.g. a SimulatedBITalino for tests and benchmarks
+	         */
+		this.transport = transport;
+	}
 	
 	public Vector<RemoteDevice> findDevices() throws InterruptedException
 	{
@@ -105,12 +152,10 @@ public class BITalino {
 	         * \param[in] macAdd The device Bluetooth MAC address ("xx:xx:xx:xx:xx:xx")
                  * \param[in] samplingRate Sampling rate in Hz. Accepted values are 1, 10, 100 or 1000 Hz. Default value is 1000 Hz.
 
+	         * Instead of waiting a fixed time after connecting, the device is probed with the version command until it answers (see setConnectTimeout()).
 	         * \exception BITalinoErrorTypes (BITalinoErrorTypes.MACADDRESS_NOT_VALID)
+	         * \exception BITalinoErrorTypes (BITalinoErrorTypes.BT_DEVICE_NOT_CONNECTED)
 	         * \exception BITalinoErrorTypes (BITalinoErrorTypes.SAMPLING_RATE_NOT_DEFINED)
-	         * \exception IllegalArgumentException
-	         * \exception ConnectionNotFoundException
-	         * \exception IOException
-	         * \exception SecurityException
 	         */
 			if (macAdd.split(":").length > 1) 
 			{
@@ -123,15 +168,22 @@ public class BITalino {
 		
 		try 
 		{
-			hSocket = (StreamConnection)Connector.open("btspp://" + macAdd + ":1", Connector.READ_WRITE);
-			iStream = hSocket.openDataInputStream();
-			oStream = hSocket.openDataOutputStream();
-			Thread.sleep(2000);
-			
+			transport.open(macAdd);
+			iStream = new DataInputStream(transport.openInputStream());
+			oStream = new DataOutputStream(transport.openOutputStream());
+			if (!waitReady()) 
+			{
+				throw new IOException("No answer from the device");
+			}
 		} 
 		catch (Exception e) 
 		{
-			close();
+			try 
+			{
+				close();
+			} 
+			catch (BITalinoException ignored) {}
+			throw new BITalinoException(BITalinoErrorTypes.BT_DEVICE_NOT_CONNECTED);
 		}
 		
 		try 
@@ -197,6 +249,10 @@ public class BITalino {
 			} else {
 				number_bytes = (int) Math.ceil(((float)52 + (float)6*(nChannels-4))/8);
 			}
+			resyncTable = CRC4.slideTable(number_bytes-1);
+			resyncEvents = 0;
+			skippedBytes = 0;
+			sequence.reset();
 			try 
 			{
 				Write(bit);
@@ -232,10 +288,9 @@ public class BITalino {
                  */
 		try 
 		{
-			hSocket.close();
+			transport.close();
 			iStream.close();
 			oStream.close();
-			hSocket=null;
 			iStream = null;
 			oStream = null;
 		} 
@@ -246,6 +301,87 @@ public class BITalino {
 		
 	}
 	
+	public void setConnectTimeout(int milliseconds) 
+	{
+		/** Sets how long open() keeps probing the device before giving up. Default value is 5000 ms.
+		 * \param[in] milliseconds Maximum time to wait for the device to answer after connecting
+		 */
+		connectTimeout = milliseconds;
+	}
+	
+	public void setCommandDelay(int milliseconds) 
+	{
+		/** Sets a fixed settle time after every command sent to the device. Default value is 0 ms (no wait).
+		 * \param[in] milliseconds Time to sleep after each command
+		 */
+		commandDelay = milliseconds;
+	}
+	
+	private boolean waitReady() throws IOException, InterruptedException 
+	{
+		/** Probes the device with the version command until it answers with a complete line or connectTimeout expires.
+		 * The stream is polled with available() so a silent device cannot block the caller beyond the timeout.
+		 * The probe is only repeated while no byte of an answer has arrived; if it was sent more than once, the
+		 * answers to the extra probes are drained until the stream stays quiet for DRAIN_QUIET ms, so that they
+		 * are not read later as frame bytes or as the answer to version().
+		 * \return true if the device answered
+		 */
+		long deadline = System.currentTimeMillis()+connectTimeout;
+		int probes = 0;
+		boolean answering = false;
+		long probeDeadline = 0;
+		while (true) 
+		{
+			long now = System.currentTimeMillis();
+			if (now >= deadline) 
+			{
+				return false;
+			}
+			if (!answering && now >= probeDeadline) 
+			{
+				oStream.write(7);
+				oStream.flush();
+				probes++;
+				probeDeadline = Math.min(deadline,now+PROBE_TIMEOUT);
+			}
+			if (iStream.available() > 0) 
+			{
+				int b = iStream.read();
+				if (b < 0) 
+				{
+					return false;
+				}
+				answering = true;
+				if (b == '\n') 
+				{
+					break;
+				}
+			} 
+			else 
+			{
+				Thread.sleep(POLL_INTERVAL);
+			}
+		}
+		if (probes > 1) 
+		{
+			long quietSince = System.currentTimeMillis();
+			while (System.currentTimeMillis()-quietSince < DRAIN_QUIET) 
+			{
+				int n = iStream.available();
+				if (n > 0) 
+				{
+					iStream.skipBytes(n);
+					quietSince = System.currentTimeMillis();
+				} 
+				else 
+				{
+					Thread.sleep(POLL_INTERVAL);
+				}
+			}
+		}
+		return true;
+	}
+	
 	public void Write(int data) throws BITalinoException 
 	{
 		/**
@@ -257,7 +393,10 @@ public class BITalino {
 		{
 			oStream.write(data);
 			oStream.flush();
-			Thread.sleep(1000);
+			if (commandDelay > 0) 
+			{
+				Thread.sleep(commandDelay);
+			}
 		} 
 		catch (Exception e) 
 		{
@@ -356,83 +495,77 @@ public class BITalino {
 		}
 	}
 	
-	private Frame[] decode(byte[] buffer) throws IOException, BITalinoException 
+	public void setResyncListener(ResyncListener listener) 
 	{
-               /** Unpack a raw byte stream into a frames vector.
+               /** Registers a listener notified with the number of skipped bytes every time read() resynchronises the stream.
+                * \param[in] listener Listener to notify, or null to remove it.
+                */
+		resyncListener = listener;
+	}
+	
+	public long getResyncEvents() 
+	{
+               /** Returns the number of times the stream was resynchronised after a CRC failure since start() was called.
+                */
+		return resyncEvents;
+	}
+	
+	public long getSkippedBytes() 
+	{
+               /** Returns the number of bytes skipped while resynchronising since start() was called.
+                */
+		return skippedBytes;
+	}
+	
+	public long getLostFrames() 
+	{
+               /** Returns the number of frames the device sent but never arrived, detected from gaps in the sequence numbers since start() was called.
+                * \remarks The sequence number has 4 bits, so a burst of 16 or more lost frames is counted modulo 16.
+                */
+		return sequence.getLostFrames();
+	}
+	
+	public long getGapEvents() 
+	{
+               /** Returns the number of gaps (runs of consecutive lost frames) detected since start() was called.
+                */
+		return sequence.getGapEvents();
+	}
+	
+	private void decode(byte[] buffer, int off, FrameBlock block, int index) 
+	{
+               /** Unpack one frame in place from a raw byte stream into a block. The frame must already have passed the CRC check (see CRC4).
                 * \param[in] buffer Vector with the bytes read from the device.
-                * \return Vector of frames decoded frames. 
-                * \exception BITalinoException (BITalinoErrorTypes.INCORRECT_DECODE)
+                * \param[in] off Position of the first byte of the frame within the buffer.
+                * \param[out] block Block to store the decoded values in.
+                * \param[in] index Position of the frame within the block.
                 */
-		try 
+		int j=off+(number_bytes-1);
+		short[][] analog = block.analog;
+		block.seq[index] = (byte) (((buffer[j-0]&0xF0)>>4)&0xf);
+		block.digital[index] = (byte) ((buffer[j-1]>>4)&0x0F);
+									
+		/*parse buffer frame*/
+		switch(analogChannels.length-1)
 		{
-			Frame[] frames = new Frame[1];
-			int j=(number_bytes-1), i=0, CRC = 0,x0=0,x1=0,x2=0,x3=0,out=0,inp=0;
-			CRC= (buffer[j-0]&0x0F)&0xFF;
-			// check CRC
-			for (int bytes = 0; bytes<number_bytes;bytes++) 
-			{
-				for (int bit=7;bit>-1;bit--)
-				{
-					inp=(buffer[bytes])>>bit & 0x01;
-					if (bytes == (number_bytes - 1) && bit<4) 
-					{
-						inp = 0;
-					}
-					out=x3;
-					x3=x2;
-					x2=x1;
-					x1=out^x0;
-					x0=inp^out;
-				}
-			}
-			//if the message was correctly received, it starts decoding	
-			if (CRC == ((x3<<3)|(x2<<2)|(x1<<1)|x0)) 
-			{
+		
+		case 5:
+			analog[5][index] = (short)((buffer[j-7]&0x3F));	
+		case 4:
 			
-				/*parse frames*/
-				
-				frames[i]=new Frame();            
-				frames[i].seq = (short) ((buffer[j-0]&0xF0)>>4)&0xf;
-				frames[i].digital[0] = (short)((buffer[j-1]>>7)&0x01);
-				frames[i].digital[1] = (short)((buffer[j-1]>>6)&0x01);
-				frames[i].digital[2] = (short)((buffer[j-1]>>5)&0x01);
-				frames[i].digital[3] = (short)((buffer[j-1]>>4)&0x01);
-											
-				/*parse buffer frame*/
-				switch(analogChannels.length-1)
-				{
-				
-				case 5:
-					frames[i].analog[5]= (short)((buffer[j-7]&0x3F));	
-				case 4:
-					
-					frames[i].analog[4] = (short)((((buffer[j-6]&0x0F)<<2)|((buffer[j-7]&0xc0)>>6))&0x3f);
-				case 3:
-					
-					frames[i].analog[3] = (short)((((buffer[j-5]&0x3F)<<4)|((buffer[j-6]&0xf0)>>4))&0x3ff);
-				case 2:
-					
-					frames[i].analog[2] = (short)((((buffer[j-4]&0xff)<<2)|(((buffer[j-5]&0xc0)>>6)))&0x3ff);
-				case 1:
-					
-					frames[i].analog[1] = (short)((((buffer[j-2]&0x3)<<8)|(buffer[j-3])&0xff)&0x3ff);
-				case 0:
-					
-					frames[i].analog[0] = (short)((((buffer[j-1]&0xF)<<6)|((buffer[j-2]&0XFC)>>2))&0x3ff);
-				}
-				
-				
-			} 
-			else 
-			{
-				frames[i]=new Frame();
-				frames[i].seq = -1;
-			}
-			return frames;
-		} 
-		catch (Exception e) 
-		{
-			throw new BITalinoException(BITalinoErrorTypes.INCORRECT_DECODE);
+			analog[4][index] = (short)((((buffer[j-6]&0x0F)<<2)|((buffer[j-7]&0xc0)>>6))&0x3f);
+		case 3:
+			
+			analog[3][index] = (short)((((buffer[j-5]&0x3F)<<4)|((buffer[j-6]&0xf0)>>4))&0x3ff);
+		case 2:
+			
+			analog[2][index] = (short)((((buffer[j-4]&0xff)<<2)|(((buffer[j-5]&0xc0)>>6)))&0x3ff);
+		case 1:
+			
+			analog[1][index] = (short)((((buffer[j-2]&0x3)<<8)|(buffer[j-3])&0xff)&0x3ff);
+		case 0:
+			
+			analog[0][index] = (short)((((buffer[j-1]&0xF)<<6)|((buffer[j-2]&0XFC)>>2))&0x3ff);
 		}
 	}
 	
@@ -440,43 +573,131 @@ public class BITalino {
 	{
                /** Reads acquisition frames from the device.
                 * This method returns when all requested frames are received from the device, or when a receive timeout occurs.
+                * The frames are decoded into a reusable FrameBlock and converted to Frame objects; readBlock() avoids that conversion.
                 * \param[in] nSamples Number of frames that should be read from the device.
                 * \return Vector of frames obtained from the device. 
                 * \remarks If a problem occurred, the size of the frames vector  is lower than the frames vector size. This method must be called only during an acquisition.
                 * \exception BITalinoException (BITalinoErrorTypes.LOST_COMMUNICATION)
                 */   
+		if (frameBlock == null || frameBlock.channels() != analogChannels.length || frameBlock.capacity() < nSamples) 
+		{
+			frameBlock = new FrameBlock(analogChannels.length, nSamples);
+		}
+		readInto(frameBlock,0,nSamples);
+		return frameBlock.toFrames();
+	}
+	
+	public FrameBlock readBlock(int nSamples) throws BITalinoException 
+	{
+               /** Reads acquisition frames from the device into a column-wise block.
+                * This method returns when all requested frames are received from the device, or when a receive timeout occurs.
+                * \param[in] nSamples Number of frames that should be read from the device.
+                * \return Block with the frames obtained from the device, one primitive array per analog channel.
+                * \remarks This method must be called only during an acquisition.
+                * \exception BITalinoException (BITalinoErrorTypes.LOST_COMMUNICATION)
+                */   
+		FrameBlock block = new FrameBlock(analogChannels.length, nSamples);
+		readInto(block,0,nSamples);
+		return block;
+	}
+	
+	public void read(FrameBlock dest) throws BITalinoException 
+	{
+               /** Reads as many acquisition frames as the block can hold into a caller-owned block.
+                * \param[out] dest Block to store the frames in; its size becomes its capacity.
+                * \remarks This method must be called only during an acquisition.
+                * \exception BITalinoException (BITalinoErrorTypes.INVALID_PARAMETER)
+                * \exception BITalinoException (BITalinoErrorTypes.LOST_COMMUNICATION)
+                */   
+		read(dest,0,dest.capacity());
+	}
+	
+	public void read(FrameBlock dest, int offset, int count) throws BITalinoException 
+	{
+               /** Reads acquisition frames from the device into a caller-owned block, without allocating.
+                * Reusing the same blocks (see FrameBlockPool) keeps a steady-state acquisition loop free of garbage.
+                * \param[out] dest Block to store the frames in; its size becomes offset + count.
+                * \param[in] offset Position in the block of the first frame to read.
+                * \param[in] count Number of frames that should be read from the device.
+                * \remarks This method must be called only during an acquisition.
+                * \exception BITalinoException (BITalinoErrorTypes.INVALID_PARAMETER)
+                * \exception BITalinoException (BITalinoErrorTypes.LOST_COMMUNICATION)
+                */   
+		if (dest.channels() < analogChannels.length || offset < 0 || count < 0 || offset+count > dest.capacity()) 
+		{
+			throw new BITalinoException(BITalinoErrorTypes.INVALID_PARAMETER);
+		}
+		readInto(dest,offset,count);
+	}
+	
+	private void readInto(FrameBlock dest, int offset, int nSamples) throws BITalinoException 
+	{
+               /** Reads frames from the device and decodes them straight into a block.
+                * The whole block (nSamples frames) is read from the stream at once into a reusable buffer and decoded in a single pass.
+                * The CRC of all buffered frames is validated in one pass (CRC4.countValid); only when a frame fails the check the window is slid one byte at a time, updating its CRC incrementally, until the stream is in sync again.
+                * \param[out] dest Block to store the frames in; its size becomes offset + nSamples.
+                * \param[in] offset Position in the block of the first frame to read.
+                * \param[in] nSamples Number of frames that should be read from the device.
+                * \exception BITalinoException (BITalinoErrorTypes.LOST_COMMUNICATION)
+                */   
 		try 
 		{
-			Frame[] frames = new Frame[nSamples];
-			byte[] buffer = new byte[number_bytes];
-			byte[] bTemp = new byte[1];
-			int i=0;
+			int blockBytes = nSamples*number_bytes;
+			if (readBuffer.length < blockBytes+1) 
+			{
+				readBuffer = new byte[blockBytes+1];
+			}
+			iStream.readFully(readBuffer,0,blockBytes);
+			int pos = 0, end = blockBytes, i = 0;
 			while (i<nSamples) 
 			{
-				iStream.readFully(buffer,0,number_bytes);
-				Frame[] f = decode(buffer);
-				if (f[0].seq == -1) 
+				if (end-pos < number_bytes) 
 				{
-					while (f[0].seq == -1) 
+					// out of buffered bytes after a resync: keep the partial frame and read what the remaining frames need
+					int left = end-pos;
+					System.arraycopy(readBuffer,pos,readBuffer,0,left);
+					end = (nSamples-i)*number_bytes;
+					iStream.readFully(readBuffer,left,end-left);
+					pos = 0;
+				}
+				// validate every buffered frame in one pass and decode the ones in sync
+				int valid = CRC4.countValid(readBuffer,pos,number_bytes,Math.min(nSamples-i,(end-pos)/number_bytes));
+				for (int k = 0; k < valid; k++) 
+				{
+					decode(readBuffer,pos,dest,offset+i);
+					sequence.next(dest.seq[offset+i++]);
+					pos += number_bytes;
+				}
+				if (i<nSamples && end-pos >= number_bytes) 
+				{
+					// the frame at pos failed the CRC: slide the window one byte at a time, rolling its CRC register
+					int skipped = 0, last = 0;
+					int reg = CRC4.register(readBuffer,pos,number_bytes-1);
+					do 
 					{
-						iStream.readFully(bTemp,0,1);
-						for (int j = number_bytes-2; j >= 0; j--) 
-						{                
-						    buffer[j+1] = buffer[j];
+						if (end-pos == number_bytes) 
+						{
+							// the window reached the end of the buffered bytes: read what the remaining frames need
+							System.arraycopy(readBuffer,pos,readBuffer,0,number_bytes);
+							end = (nSamples-i)*number_bytes+1;
+							iStream.readFully(readBuffer,number_bytes,end-number_bytes);
+							pos = 0;
 						}
-						buffer[0] = bTemp[0];
-						f = decode(buffer);
+						reg = CRC4.update(reg,readBuffer[pos+number_bytes-1])^resyncTable[readBuffer[pos]&0xFF];
+						pos++;
+						skipped++;
+						last = readBuffer[pos+number_bytes-1];
+					} 
+					while (CRC4.update(reg,last&0xF0) != (last&0x0F));
+					resyncEvents++;
+					skippedBytes += skipped;
+					if (resyncListener != null) 
+					{
+						resyncListener.resynchronised(skipped);
 					}
-					frames[i] = f[0];
-				} 
-				else 
-				{
-					
-					frames[i] = f[0];
 				}
-				i++;
 			}
-			return frames;
+			dest.size = offset+nSamples;
 		} 
 		catch (Exception e) 
 		{
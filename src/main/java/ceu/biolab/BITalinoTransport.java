@@ -0,0 +1,23 @@
+package ceu.biolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/// Byte-level link between a BITalino instance and a device.
+/// BITalino only needs a connection it can open, a stream of frames to read and a stream
+/// to send command bytes to, so the Bluetooth stack can be swapped for an in-process device.
+public interface BITalinoTransport {
+
+    /// Establishes the link to the device with the given MAC address (12 hex digits, no delimiters).
+    void open(String macAdd) throws IOException;
+
+    /// Stream with the data coming from the device.
+    InputStream openInputStream() throws IOException;
+
+    /// Stream through which command bytes are sent to the device.
+    OutputStream openOutputStream() throws IOException;
+
+    /// Releases the link. Streams obtained from this transport stop working afterwards.
+    void close() throws IOException;
+}
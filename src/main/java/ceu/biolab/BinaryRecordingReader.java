@@ -0,0 +1,138 @@
+package ceu.biolab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/// Reads a recording written by BinaryRecordingWriter.
+/// Chunks are read independently by their position in the file, so reading the end of a long
+/// recording costs the same as reading its beginning, and every chunk is checked against its CRC.
+public class BinaryRecordingReader implements Closeable {
+
+    private final FileChannel channel;
+    private final RecordingHeader header;
+    private final RecordingCodec codec;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(RecordingHeader.CHUNK_HEADER_BYTES);
+    private final ByteBuffer payload;
+    private final CRC32C crc = new CRC32C();
+
+    /// File position of every chunk
+    private long[] positions;
+    private int chunkCount;
+
+    /// Opens the file, reads its header and locates the chunks.
+    public BinaryRecordingReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(RecordingHeader.HEADER_BYTES);
+            readFully(buf, 0);
+            buf.flip();
+            header = RecordingHeader.read(buf);
+            if (header.getEncoding() != RecordingHeader.ENCODING_PACKED
+                    && header.getEncoding() != RecordingHeader.ENCODING_RICE) {
+                throw new IOException("Unsupported chunk encoding " + header.getEncoding());
+            }
+            codec = new RecordingCodec(header);
+            payload = ByteBuffer.allocate(codec.maxPayloadBytes());
+            locateChunks();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /// Packed chunks all have the same size; compressed ones are found by walking the chunk headers,
+    /// which only reads CHUNK_HEADER_BYTES per chunk.
+    private void locateChunks() throws IOException {
+        long size = channel.size();
+        long position = RecordingHeader.HEADER_BYTES;
+        positions = new long[16];
+        chunkCount = 0;
+        while (position + RecordingHeader.CHUNK_HEADER_BYTES <= size) {
+            int length = payload.capacity();
+            if (header.getEncoding() != RecordingHeader.ENCODING_PACKED) {
+                chunkHeader.clear();
+                readFully(chunkHeader, position);
+                length = chunkHeader.getInt(12);
+                if (length < 0 || length > payload.capacity()) {
+                    break;
+                }
+            }
+            long next = position + RecordingHeader.CHUNK_HEADER_BYTES + length;
+            if (next > size) {
+                break;
+            }
+            if (chunkCount == positions.length) {
+                positions = Arrays.copyOf(positions, chunkCount * 2);
+            }
+            positions[chunkCount++] = position;
+            position = next;
+        }
+    }
+
+    public RecordingHeader getHeader() {
+        return header;
+    }
+
+    /// Number of complete chunks in the file (a chunk cut short by a crash is ignored).
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /// Index of the chunk holding a given sample.
+    public int chunkOf(long sample) {
+        return (int) (sample / header.getChunkFrames());
+    }
+
+    /// Reads one chunk into a block able to hold getHeader().getChunkFrames() frames.
+    /// Sequence numbers are not stored; they are rebuilt from the position of each frame in the recording.
+    /// Reading the chunks one after the other decodes the recording as a stream, with memory bounded by one chunk.
+    /// \param[in] index Chunk index (0...getChunkCount()-1)
+    /// \param[out] dest Block receiving the frames of the chunk
+    /// \return Position in the recording of the first frame of the chunk
+    /// \exception IOException if the chunk is corrupted
+    public long readChunk(int index, FrameBlock dest) throws IOException {
+        long position = positions[index];
+        chunkHeader.clear();
+        readFully(chunkHeader, position);
+        chunkHeader.flip();
+        long sampleOffset = chunkHeader.getLong();
+        int frames = chunkHeader.getInt();
+        int length = chunkHeader.getInt();
+        int expected = chunkHeader.getInt();
+        if (length < 0 || length > payload.capacity() || frames < 0 || frames > header.getChunkFrames()) {
+            throw new IOException("Chunk " + index + " is corrupted");
+        }
+        payload.clear().limit(length);
+        readFully(payload, position + RecordingHeader.CHUNK_HEADER_BYTES);
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("Chunk " + index + " is corrupted");
+        }
+
+        codec.decode(payload.array(), length, frames, dest);
+        for (int i = 0; i < frames; i++) {
+            dest.seq[i] = (byte) ((sampleOffset + i) & 0x0F);
+        }
+        return sampleOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of recording");
+            }
+        }
+    }
+}
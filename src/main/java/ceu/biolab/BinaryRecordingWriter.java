@@ -0,0 +1,111 @@
+package ceu.biolab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/// Writes a recording in the chunked binary format described in RecordingHeader.
+/// Frames are grouped into chunks, each with its sample offset and its own CRC, so a damaged chunk only
+/// loses its own samples and any part of the recording can be reached without decoding what comes before
+/// it (see BinaryRecordingReader). With ENCODING_PACKED frames are bit-packed (14 bits for a single channel
+/// against the 4-5 bytes of a TXT sample); ENCODING_RICE compresses every chunk losslessly as it fills.
+/// Memory is bounded by one chunk whatever the length of the recording.
+///
+/// The frames are expected to form a continuous timeline, i.e. the sink should be behind a GapFillingSink.
+public class BinaryRecordingWriter implements FrameSink {
+
+    /// Default number of frames per chunk
+    public static final int DEFAULT_CHUNK_FRAMES = 1000;
+
+    private final FileChannel channel;
+    private final int nChannels;
+    private final FrameBlock pending;
+    private final RecordingCodec codec;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(RecordingHeader.CHUNK_HEADER_BYTES);
+    private final ByteBuffer payload;
+    private final ByteBuffer[] chunk;
+    private final CRC32C crc = new CRC32C();
+
+    private long sampleOffset = 0;
+    private long bytesWritten = 0;
+
+    /// Creates the file and writes the header.
+    public BinaryRecordingWriter(File file, RecordingHeader header) throws IOException {
+        this.nChannels = header.getChannels();
+        this.pending = new FrameBlock(nChannels, header.getChunkFrames());
+        this.codec = new RecordingCodec(header);
+        this.payload = ByteBuffer.allocate(codec.maxPayloadBytes());
+        this.chunk = new ByteBuffer[]{chunkHeader, payload};
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer buf = ByteBuffer.allocate(RecordingHeader.HEADER_BYTES);
+        header.write(buf);
+        buf.flip();
+        write(buf);
+    }
+
+    /// Number of frames written so far, including the ones still waiting for their chunk to fill.
+    public long getFramesWritten() {
+        return sampleOffset + pending.size;
+    }
+
+    /// Size of the file so far, header included.
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void onBlock(FrameBlock block) throws IOException {
+        int i = 0;
+        while (i < block.size) {
+            int n = Math.min(block.size - i, pending.capacity() - pending.size);
+            for (int k = 0; k < nChannels; k++) {
+                System.arraycopy(block.analog[k], i, pending.analog[k], pending.size, n);
+            }
+            System.arraycopy(block.digital, i, pending.digital, pending.size, n);
+            pending.size += n;
+            i += n;
+            if (pending.size == pending.capacity()) {
+                writeChunk();
+            }
+        }
+    }
+
+    @Override
+    public void onStop(Throwable error) throws IOException {
+        try {
+            if (pending.size > 0) {
+                writeChunk();
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        int length = codec.encode(pending, payload.array());
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        payload.position(0).limit(length);
+
+        chunkHeader.clear();
+        chunkHeader.putLong(sampleOffset);
+        chunkHeader.putInt(pending.size);
+        chunkHeader.putInt(length);
+        chunkHeader.putInt((int) crc.getValue());
+        chunkHeader.flip();
+        write(chunk);
+        sampleOffset += pending.size;
+        pending.size = 0;
+    }
+
+    private void write(ByteBuffer... buffers) throws IOException {
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            bytesWritten += channel.write(buffers);
+        }
+    }
+}
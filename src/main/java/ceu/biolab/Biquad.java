@@ -0,0 +1,82 @@
+package ceu.biolab;
+
+/// Coefficients of one second-order IIR section, normalised so that a0 = 1:
+/// y[n] = b0 x[n] + b1 x[n-1] + b2 x[n-2] - a1 y[n-1] - a2 y[n-2].
+/// The factories follow the RBJ audio EQ cookbook (bilinear transform with frequency pre-warping).
+/// A section holds no state; FilterChain keeps the state of every channel.
+public class Biquad {
+
+    /// Q of a second-order Butterworth section (maximally flat pass band)
+    public static final double BUTTERWORTH_Q = Math.sqrt(0.5);
+
+    final double b0;
+    final double b1;
+    final double b2;
+    final double a1;
+    final double a2;
+
+    public Biquad(double b0, double b1, double b2, double a1, double a2) {
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+    }
+
+    /// Builds a section from unnormalised coefficients.
+    private static Biquad of(double b0, double b1, double b2, double a0, double a1, double a2) {
+        return new Biquad(b0 / a0, b1 / a0, b2 / a0, a1 / a0, a2 / a0);
+    }
+
+    /// \param[in] samplingRate Sampling rate in Hz
+    /// \param[in] cutoff -3 dB frequency in Hz (below samplingRate / 2)
+    /// \param[in] q Quality factor (BUTTERWORTH_Q for a flat pass band)
+    public static Biquad lowPass(double samplingRate, double cutoff, double q) {
+        double w = 2 * Math.PI * cutoff / samplingRate;
+        double alpha = Math.sin(w) / (2 * q);
+        double cos = Math.cos(w);
+        return of((1 - cos) / 2, 1 - cos, (1 - cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /// \param[in] samplingRate Sampling rate in Hz
+    /// \param[in] cutoff -3 dB frequency in Hz (below samplingRate / 2)
+    /// \param[in] q Quality factor (BUTTERWORTH_Q for a flat pass band)
+    public static Biquad highPass(double samplingRate, double cutoff, double q) {
+        double w = 2 * Math.PI * cutoff / samplingRate;
+        double alpha = Math.sin(w) / (2 * q);
+        double cos = Math.cos(w);
+        return of((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /// Band-stop section removing a narrow band around a frequency, e.g. mains hum.
+    /// \param[in] samplingRate Sampling rate in Hz
+    /// \param[in] frequency Centre of the rejected band in Hz
+    /// \param[in] q Centre frequency over the width of the band (higher is narrower)
+    public static Biquad notch(double samplingRate, double frequency, double q) {
+        double w = 2 * Math.PI * frequency / samplingRate;
+        double alpha = Math.sin(w) / (2 * q);
+        double cos = Math.cos(w);
+        return of(1, -2 * cos, 1, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /// First-order DC blocker y[n] = x[n] - x[n-1] + r y[n-1], with r = exp(-2 pi cutoff / samplingRate).
+    /// Cheaper than a high-pass section and with a sharper corner close to 0 Hz.
+    public static Biquad dcBlocker(double samplingRate, double cutoff) {
+        double r = Math.exp(-2 * Math.PI * cutoff / samplingRate);
+        return new Biquad(1, -1, 0, -r, 0);
+    }
+
+    /// Gain of the section at a frequency (magnitude of the frequency response).
+    public double gain(double samplingRate, double frequency) {
+        double w = 2 * Math.PI * frequency / samplingRate;
+        double c1 = Math.cos(w);
+        double s1 = -Math.sin(w);
+        double c2 = Math.cos(2 * w);
+        double s2 = -Math.sin(2 * w);
+        double numRe = b0 + b1 * c1 + b2 * c2;
+        double numIm = b1 * s1 + b2 * s2;
+        double denRe = 1 + a1 * c1 + a2 * c2;
+        double denIm = a1 * s1 + a2 * s2;
+        return Math.hypot(numRe, numIm) / Math.hypot(denRe, denIm);
+    }
+}
@@ -3,12 +3,18 @@ package ceu.biolab;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.bluetooth.RemoteDevice;
 import javax.swing.border.EmptyBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 public class BitalinoApp extends JFrame {
 
@@ -24,15 +30,39 @@ public class BitalinoApp extends JFrame {
     public JTextField macField;
     public JButton saveBtn;
     private JButton newRecBtn;
-    private BufferedWriter writer;
-    private boolean firstSample = true;
     private File currentAcquisitionFile;
+    private File currentBinaryFile;
+    /// Binary output of a long recording, written in segments instead of currentBinaryFile
+    private SegmentedRecordingWriter currentSegments;
+    /// EMG envelope and activations of an EMG recording (see EmgAnalysisSink), null for other types
+    private File currentEnvelopeFile;
+    private File currentActivationFile;
+    private JCheckBox longRecordingCheck;
+    private JCheckBox filterCheck;
+    /// Recordings and EMG analysis files still in the temporary directory, which saving moves instead of copying
+    private final Set<File> temporaryFiles = new HashSet<>();
     private SignalPanel signalPanel;
+    private SessionPanel sessionPanel;
+    private JLabel statusLabel;
+    private LogView logView;
     private boolean isConnected = false;
 
 
     public AtomicBoolean running = new AtomicBoolean(false);
-    private Thread acquisitionThread;
+    private AcquisitionEngine engine;
+    /// Sinks of the acquisition writing files, with the name used to report their failures
+    private final Map<FrameSink, String> recordingSinks = new LinkedHashMap<>();
+    /// Heart rate of an ECG recording, null for other types
+    private volatile QrsDetector qrsDetector;
+    /// Live EMG analysis of an EMG recording, null for other types
+    private volatile EmgEnvelope emgEnvelope;
+    private static final long MAX_DURATION_MS = 2 * 60 * 1000L;
+    /// Length of the binary segments of a long recording, which has no duration limit
+    private static final int SEGMENT_MINUTES = 5;
+    /// Frequency of the mains hum removed from the displayed signal
+    private static final int MAINS_HZ = 50;
+    /// Seconds of signal shown across the signal panel
+    private static final int SIGNAL_WINDOW_SECONDS = 5;
 
     public BitalinoApp() {
         bitalino = new BITalino();
@@ -53,19 +83,18 @@ public class BitalinoApp extends JFrame {
         outputArea.setEditable(false);
         outputArea.setFont(new Font("Monospaced", Font.PLAIN, 16));
         scrollPane = new JScrollPane(outputArea);
+        logView = new LogView(outputArea);
 
         signalPanel = new SignalPanel();
-
-        JScrollPane signalScroll = new JScrollPane(
-                signalPanel,
-                ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
-                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED
-        );
-        signalScroll.getViewport().setBackground(Color.BLACK);
+        sessionPanel = new SessionPanel();
+        sessionPanel.setToolTipText("Wheel: zoom, drag: pan, double click: follow live, right click: lanes shown");
+        JTabbedPane signalTabs = new JTabbedPane();
+        signalTabs.addTab("Live", signalPanel);
+        signalTabs.addTab("Session", sessionPanel);
 
         JSplitPane splitPane = new JSplitPane(
                 JSplitPane.VERTICAL_SPLIT,
-                signalScroll,
+                signalTabs,
                 scrollPane
         );
         splitPane.setResizeWeight(0.7);
@@ -86,6 +115,7 @@ public class BitalinoApp extends JFrame {
                 stopAcquisition();
                 closeDevice();
             }
+            discardRecording();
             System.out.println("No BITalino connection established -> closing application...");
             System.exit(0);
         });
@@ -103,8 +133,8 @@ public class BitalinoApp extends JFrame {
         try {
             // 1. Parar adquisición si estaba corriendo
             running.set(false);
-            if (acquisitionThread != null && acquisitionThread.isAlive()) {
-                acquisitionThread.join();
+            if (engine != null) {
+                engine.stop();
             }
 
             // 2. Parar el dispositivo si está activo
@@ -120,18 +150,21 @@ public class BitalinoApp extends JFrame {
             // Reconectar el objeto BITalino
             bitalino = new BITalino();
 
+            discardRecording();
+
         } catch (Exception ex) {
             outputArea.append("Error resetting BITalino: " + ex.getMessage() + "\n");
         }
 
 
         outputArea.setText("");
+        statusLabel.setText("");
         signalPanel.clear();
+        sessionPanel.clear();
         startBtn.setEnabled(false);
         stopBtn.setEnabled(false);
         saveBtn.setEnabled(false);
         connectBtn.setEnabled(true);
-        firstSample = true;
 
         outputArea.append("New recording ready, select new sampling rate to connect bitalino.\n");
     }
@@ -159,6 +192,10 @@ public class BitalinoApp extends JFrame {
         closeBtn.setPreferredSize(new Dimension(100, 30));
         closeBar.add(newRecBtn, BorderLayout.WEST);
 
+        statusLabel = new JLabel("", SwingConstants.CENTER);
+        statusLabel.setFont(new Font("Open sans", Font.PLAIN, 14));
+        closeBar.add(statusLabel, BorderLayout.CENTER);
+
 
         closeBar.add(closeBtn, BorderLayout.EAST);
 
@@ -218,6 +255,19 @@ public class BitalinoApp extends JFrame {
         typeCombo.setFont(fieldFont);
         typeCombo.setMaximumSize(new Dimension(120, 35));
         rightPanel.add(typeCombo);
+        rightPanel.add(Box.createRigidArea(new Dimension(20, 0)));
+        longRecordingCheck = new JCheckBox("Long recording");
+        longRecordingCheck.setFont(labelFont);
+        longRecordingCheck.setOpaque(false);
+        longRecordingCheck.setToolTipText("No time limit; the binary recording is written in "
+                + SEGMENT_MINUTES + "-minute segments");
+        rightPanel.add(longRecordingCheck);
+        filterCheck = new JCheckBox("Filter", true);
+        filterCheck.setFont(labelFont);
+        filterCheck.setOpaque(false);
+        filterCheck.setToolTipText("Band-pass and " + MAINS_HZ + " Hz notch for the selected type of recording "
+                + "(display only, recordings stay raw)");
+        rightPanel.add(filterCheck);
         rightPanel.add(Box.createRigidArea(new Dimension(30, 0)));
 
         Dimension bigButtonSize = new Dimension(120, 40);
@@ -312,24 +362,161 @@ public class BitalinoApp extends JFrame {
         }
 
 
+        // a new recording replaces the last one
+        discardRecording();
+        // every file and sink is created before the device starts streaming, and closed again if anything fails
+        List<FrameSink> opened = new ArrayList<>();
+        List<File> created = new ArrayList<>();
+        boolean deviceStarted = false;
         try {
+            int rate = (Integer) samplingCombo.getSelectedItem();
             currentAcquisitionFile = File.createTempFile("bitalino_recording_", ".txt");
-            writer = new BufferedWriter(new FileWriter(currentAcquisitionFile, false));
+            created.add(currentAcquisitionFile);
+            FrameSink fileSink = new TxtFileSink(currentAcquisitionFile, rate);
+            opened.add(fileSink);
+            RecordingHeader header = new RecordingHeader(RecordingHeader.ENCODING_RICE, rate,
+                    RecordingHeader.channelMask(channels), macField.getText().trim(), System.currentTimeMillis(),
+                    BinaryRecordingWriter.DEFAULT_CHUNK_FRAMES);
+            boolean longRecording = longRecordingCheck.isSelected();
+            FrameSink binarySink;
+            if (longRecording) {
+                File segmentDir = Files.createTempDirectory("bitalino_segments_").toFile();
+                created.add(segmentDir);
+                currentSegments = new SegmentedRecordingWriter(segmentDir, "bitalino_recording", header,
+                        SEGMENT_MINUTES * 60L * rate);
+                currentBinaryFile = null;
+                binarySink = currentSegments;
+            } else {
+                currentBinaryFile = File.createTempFile("bitalino_recording_", ".bin");
+                created.add(currentBinaryFile);
+                currentSegments = null;
+                binarySink = new BinaryRecordingWriter(currentBinaryFile, header);
+            }
+            opened.add(binarySink);
+            currentEnvelopeFile = null;
+            currentActivationFile = null;
+            EmgAnalysisSink analysis = null;
+            if (type.equals("EMG") && rate >= 100) {
+                currentEnvelopeFile = File.createTempFile("bitalino_envelope_", ".csv");
+                created.add(currentEnvelopeFile);
+                currentActivationFile = File.createTempFile("bitalino_activations_", ".csv");
+                created.add(currentActivationFile);
+                analysis = new EmgAnalysisSink(currentEnvelopeFile, currentActivationFile, rate, MAINS_HZ);
+                opened.add(analysis);
+            }
 
-            writer.write(String.valueOf(samplingCombo.getSelectedItem()));
-            writer.newLine();
             bitalino.start(channels);
+            deviceStarted = true;
+            temporaryFiles.add(currentAcquisitionFile);
+            if (currentBinaryFile != null) {
+                temporaryFiles.add(currentBinaryFile);
+            }
+            if (analysis != null) {
+                temporaryFiles.add(currentEnvelopeFile);
+                temporaryFiles.add(currentActivationFile);
+            }
             outputArea.append("Acquisition started on channel A1");
             outputArea.append("\n");
             running.set(true);
             startBtn.setEnabled(false);
             stopBtn.setEnabled(true);
 
-            acquisitionThread = new Thread(this::readLoop);
-            acquisitionThread.start();
+            signalPanel.setWindow(Math.max(50, rate * SIGNAL_WINDOW_SECONDS));
+            String[] channelNames = new String[channels.length];
+            for (int k = 0; k < channels.length; k++) {
+                channelNames[k] = "A" + (channels[k] + 1);
+            }
+            sessionPanel.setChannels(channelNames, rate);
+            SampleClock clock = new SampleClock(rate);
+            engine = new AcquisitionEngine(bitalino, channels.length, AcquisitionEngine.blockSizeFor(rate));
+            engine.setMaxDuration(longRecording ? 0 : MAX_DURATION_MS);
+            engine.setClock(clock);
+            recordingSinks.clear();
+            recordingSinks.put(new GapFillingSink(fileSink, GapFillingSink.Mode.INTERPOLATE), "TXT recording");
+            recordingSinks.put(new GapFillingSink(binarySink, GapFillingSink.Mode.INTERPOLATE), "binary recording");
+            FrameSink display = new DisplaySink(clock, channels.length);
+            if (filterCheck.isSelected()) {
+                display = new FilteringSink(display, FilterChain.forPreset(FilterChain.Preset.valueOf(type),
+                        channels.length, rate, MAINS_HZ));
+            }
+            // frames lost on the link or dropped by the engine are filled in, so that the display counts
+            // samples on the same timeline as the device and the clock
+            engine.addSink(new GapFillingSink(display, GapFillingSink.Mode.HOLD));
+            qrsDetector = null;
+            if (type.equals("ECG") && rate >= 100) {
+                QrsDetector detector = new QrsDetector(rate, null);
+                engine.addSink(new GapFillingSink(block -> detector.process(block.analog(0), 0, block.size()),
+                        GapFillingSink.Mode.INTERPOLATE));
+                qrsDetector = detector;
+            }
+            emgEnvelope = null;
+            if (analysis != null) {
+                recordingSinks.put(new GapFillingSink(analysis, GapFillingSink.Mode.INTERPOLATE), "EMG analysis");
+                emgEnvelope = analysis.getEnvelope();
+            }
+            recordingSinks.keySet().forEach(engine::addSink);
+            engine.start();
         } catch (Throwable ex) {
             outputArea.append("Error starting acquisition: " + ex.getMessage() + "\n");
+            abortStart(ex, opened, created, deviceStarted);
+        }
+    }
+
+    /// Undoes a start that failed before the engine ran: stops the device, closes the sinks and deletes the
+    /// files created for the recording.
+    private void abortStart(Throwable error, List<FrameSink> opened, List<File> created, boolean deviceStarted) {
+        if (deviceStarted) {
+            try {
+                bitalino.stop();
+            } catch (Exception ex) {
+                outputArea.append("Error stopping acquisition: " + ex.getMessage() + "\n");
+            }
+        }
+        for (FrameSink sink : opened) {
+            try {
+                sink.onStop(error);
+            } catch (Exception ignored) {
+            }
+        }
+        for (File file : created) {
+            temporaryFiles.remove(file);
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    child.delete();
+                }
+            }
+            file.delete();
+        }
+        currentAcquisitionFile = null;
+        currentBinaryFile = null;
+        currentSegments = null;
+        currentEnvelopeFile = null;
+        currentActivationFile = null;
+        emgEnvelope = null;
+        qrsDetector = null;
+        recordingSinks.clear();
+        engine = null;
+        running.set(false);
+        startBtn.setEnabled(true);
+        stopBtn.setEnabled(false);
+    }
+
+    /// Deletes what is left of the last recording in the temporary directory (the files not saved, or saved by
+    /// copying, and the segments of a long recording) and forgets it.
+    private void discardRecording() {
+        for (File file : temporaryFiles) {
+            file.delete();
+        }
+        temporaryFiles.clear();
+        if (currentSegments != null) {
+            currentSegments.delete();
         }
+        currentAcquisitionFile = null;
+        currentBinaryFile = null;
+        currentSegments = null;
+        currentEnvelopeFile = null;
+        currentActivationFile = null;
     }
 
     private void stopAction(ActionEvent e) {
@@ -341,11 +528,12 @@ public class BitalinoApp extends JFrame {
 
     private void stopAcquisition() {
         running.set(false);
-        if (acquisitionThread != null) {
+        if (engine != null) {
             try {
-                acquisitionThread.join();
+                engine.stop();
             } catch (InterruptedException ignored) {
             }
+            reportRecordingErrors();
         }
         try {
             bitalino.stop();
@@ -358,6 +546,18 @@ public class BitalinoApp extends JFrame {
 
     }
 
+    /// Reports the files of the acquisition that could not be written to the end, e.g. on a full disk.
+    private void reportRecordingErrors() {
+        for (Map.Entry<FrameSink, String> entry : recordingSinks.entrySet()) {
+            Throwable error = engine.getSinkError(entry.getKey());
+            if (error != null) {
+                outputArea.append("Error writing the " + entry.getValue() + ", the file is incomplete: "
+                        + error.getMessage() + "\n");
+            }
+        }
+        recordingSinks.clear();
+    }
+
     private void closeDevice() {
         try {
             bitalino.close();
@@ -375,81 +575,273 @@ public class BitalinoApp extends JFrame {
 
         JFileChooser chooser = new JFileChooser();
         chooser.setDialogTitle("Save recording");
+        FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("TXT recording (*.txt)", "txt");
+        FileNameExtensionFilter binFilter = new FileNameExtensionFilter("Binary recording (*.bin)", "bin");
+        FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV, one file per channel (*.csv)", "csv");
+        chooser.addChoosableFileFilter(txtFilter);
+        chooser.addChoosableFileFilter(binFilter);
+        chooser.addChoosableFileFilter(csvFilter);
+        chooser.setAcceptAllFileFilterUsed(false);
+        chooser.setFileFilter(txtFilter);
         chooser.setSelectedFile(new File("bitalino_recording.txt"));
 
         int option = chooser.showSaveDialog(this);
 
         if (option == JFileChooser.APPROVE_OPTION) {
-            File dest = chooser.getSelectedFile();
-            try {
-                java.nio.file.Files.copy(
-                        currentAcquisitionFile.toPath(),
-                        dest.toPath(),
-                        java.nio.file.StandardCopyOption.REPLACE_EXISTING
-                );
-
-                outputArea.append("File saved to: " + dest.getAbsolutePath() + "\n");
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error saving file: " + ex.getMessage());
+            String format = ((FileNameExtensionFilter) chooser.getFileFilter()).getExtensions()[0];
+            File chosen = chooser.getSelectedFile();
+            File dest = chosen.getName().toLowerCase().endsWith("." + format) ? chosen
+                    : new File(chosen.getParentFile(), chosen.getName().replaceFirst("\\.[^.]*$", "") + "." + format);
+            File source = format.equals("txt") ? currentAcquisitionFile : currentBinaryFile;
+            // a long recording is only joined into one binary recording when it is exported
+            SegmentedRecordingWriter segmentWriter = source == null ? currentSegments : null;
+            List<File> segments = segmentWriter != null ? segmentWriter.getSegments() : null;
+            boolean move = !format.equals("csv") && source != null && temporaryFiles.remove(source);
+            // the EMG analysis goes along with the recording, whatever its format
+            File envelopeSource = currentEnvelopeFile;
+            File activationSource = currentActivationFile;
+            String base = dest.getName().replaceFirst("\\.[^.]*$", "");
+            File envelopeDest = new File(dest.getParentFile(), base + "_envelope.csv");
+            File activationDest = new File(dest.getParentFile(), base + "_activations.csv");
+            boolean moveAnalysis = envelopeSource != null && temporaryFiles.contains(envelopeSource);
+            if (moveAnalysis) {
+                temporaryFiles.remove(envelopeSource);
+                temporaryFiles.remove(activationSource);
             }
-        }
-    }
 
+            saveBtn.setEnabled(false);
+            ProgressMonitor monitor = new ProgressMonitor(this, "Saving recording", dest.getName(), 0, 100);
+            SwingWorker<List<File>, Void> worker = new SwingWorker<>() {
+                /// Binary recording the segments were joined into, which replaces them once saved
+                private File stitched;
+
+                @Override
+                protected List<File> doInBackground() throws Exception {
+                    // saving runs here, off the event dispatch thread
+                    RecordingExporter.Progress progress =
+                            (done, total) -> setProgress((int) (done * 100 / Math.max(1, total)));
+                    List<File> saved = new ArrayList<>(saveRecording(progress));
+                    if (envelopeSource != null) {
+                        saveAnalysisFile(envelopeSource, envelopeDest, progress);
+                        saveAnalysisFile(activationSource, activationDest, progress);
+                        saved.add(envelopeDest);
+                        saved.add(activationDest);
+                    }
+                    return saved;
+                }
 
-    private void readLoop() {
-        final int blockSize = 10;
-        long startTimeMs = System.currentTimeMillis();
-
-        try {
-            firstSample = true;
-            int durationSeconds = 2*60;
-            long maxDurationMs = durationSeconds * 1000L;
-            long startLoopTime = System.currentTimeMillis();
+                private void saveAnalysisFile(File from, File to, RecordingExporter.Progress progress)
+                        throws Exception {
+                    if (from.equals(to)) {
+                        return;
+                    }
+                    if (moveAnalysis) {
+                        RecordingExporter.move(from.toPath(), to.toPath(), progress);
+                    } else {
+                        RecordingExporter.copy(from.toPath(), to.toPath(), progress);
+                    }
+                }
 
+                private List<File> saveRecording(RecordingExporter.Progress progress) throws Exception {
+                    if (segments != null && format.equals("bin")) {
+                        RecordingExporter.stitch(segments, dest, progress);
+                        stitched = dest;
+                        return List.of(dest);
+                    }
+                    if (segments != null) {
+                        File joined = File.createTempFile("bitalino_recording_", ".bin");
+                        try {
+                            RecordingExporter.stitch(segments, joined, progress);
+                            List<File> files = RecordingExporter.exportChannelCsv(joined, dest, progress);
+                            stitched = joined;
+                            return files;
+                        } finally {
+                            if (stitched != joined) {
+                                joined.delete();
+                            }
+                        }
+                    }
+                    if (format.equals("csv")) {
+                        return RecordingExporter.exportChannelCsv(source, dest, progress);
+                    }
+                    if (source.equals(dest)) {
+                        return List.of(dest);
+                    }
+                    if (move) {
+                        RecordingExporter.move(source.toPath(), dest.toPath(), progress);
+                    } else {
+                        RecordingExporter.copy(source.toPath(), dest.toPath(), progress);
+                    }
+                    return List.of(dest);
+                }
 
-            while (running.get() && (System.currentTimeMillis() - startLoopTime) < maxDurationMs) {
-                Frame[] frames = bitalino.read(blockSize);
+                @Override
+                protected void done() {
+                    monitor.close();
+                    saveBtn.setEnabled(true);
+                    try {
+                        for (File file : get()) {
+                            outputArea.append("File saved to: " + file.getAbsolutePath() + "\n");
+                        }
+                        // a moved recording now lives at its destination
+                        if (move && source == currentAcquisitionFile) {
+                            currentAcquisitionFile = dest;
+                        } else if (move && source == currentBinaryFile) {
+                            currentBinaryFile = dest;
+                        }
+                        if (moveAnalysis && envelopeSource == currentEnvelopeFile) {
+                            currentEnvelopeFile = envelopeDest;
+                            currentActivationFile = activationDest;
+                        }
+                        // the segments are not needed any more once joined into one binary recording
+                        if (stitched != null && segmentWriter == currentSegments) {
+                            currentBinaryFile = stitched;
+                            if (stitched != dest) {
+                                temporaryFiles.add(stitched);
+                            }
+                            currentSegments.delete();
+                            currentSegments = null;
+                        }
+                    } catch (Exception ex) {
+                        if (move && source.exists()) {
+                            temporaryFiles.add(source);
+                        }
+                        if (moveAnalysis) {
+                            // either file may have been moved already
+                            if (envelopeSource.exists()) {
+                                temporaryFiles.add(envelopeSource);
+                            } else if (envelopeSource == currentEnvelopeFile) {
+                                currentEnvelopeFile = envelopeDest;
+                            }
+                            if (activationSource.exists()) {
+                                temporaryFiles.add(activationSource);
+                            } else if (activationSource == currentActivationFile) {
+                                currentActivationFile = activationDest;
+                            }
+                        }
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        JOptionPane.showMessageDialog(BitalinoApp.this, "Error saving file: " + cause.getMessage());
+                    }
+                }
+            };
+            worker.addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                }
+            });
+            worker.execute();
+        }
+    }
 
-                for (Frame f : frames) {
-                    int a2 = f.analog[0];
 
-                    if (!firstSample) {
-                        writer.write(",");
-                    }
-                    writer.write(Integer.toString(a2));
-                    firstSample = false;
-
-                    double ts = (System.currentTimeMillis() - startTimeMs) / 1000.0;
-                    /*String text = String.format("t=%.3f s | value = %d%n", ts, a2);
-                    SwingUtilities.invokeLater(() -> {
-                        outputArea.append(text);
-                        outputArea.setCaretPosition(outputArea.getDocument().getLength());
-                    });*/
-                    String text = "t=" + ts + " | value = " + a2 + "\n";
-                    SwingUtilities.invokeLater(() -> {
-                        outputArea.append(text);
-                        outputArea.setCaretPosition(outputArea.getDocument().getLength());
-                        if (signalPanel != null) {
-                            signalPanel.addSample(a2);
-                        }
-                    });
+    /// Shows the acquired samples in the output area and the signal panel.
+    /// Samples reach the EDT in batches at display rate (see DisplayBatcher), one event per batch.
+    /// The output area only lists SAMPLE_LINES_PER_SECOND samples per second; the status bar shows the
+    /// rate actually received. Sample times come from the SampleClock of the acquisition, by the index of the
+    /// sample since the start, which holds because lost frames are filled in before this sink.
+    /// The batcher timer only starts with the first block, so a sink dropped by a failed start leaves none
+    /// running.
+    private class DisplaySink implements FrameSink {
+        private static final int SAMPLE_LINES_PER_SECOND = 10;
+        private static final int DISPLAY_FPS = 60;
+
+        private final SampleClock clock;
+        private final int lineStep;
+        private final DisplayBatcher batcher;
+        private final StringBuilder text = new StringBuilder();
+        private long rateWindowStart = System.nanoTime();
+        private long rateWindowSamples = 0;
+        private long samplesPerSecond = 0;
+        /// Whether the batcher was started; only used on the sink thread
+        private boolean started = false;
+
+        DisplaySink(SampleClock clock, int nChannels) {
+            int samplingRate = clock.getSamplingRate();
+            this.clock = clock;
+            this.lineStep = Math.max(1, samplingRate / SAMPLE_LINES_PER_SECOND);
+            this.batcher = new DisplayBatcher(nChannels, Math.max(samplingRate, 64), DISPLAY_FPS,
+                    this::showBatch);
+        }
 
+        /// Runs on the EDT.
+        private void showBatch(short[][] samples, byte[] digital, int count, long firstSample) {
+            text.setLength(0);
+            for (int i = 0; i < count; i++) {
+                if ((firstSample + i) % lineStep != 0) {
+                    continue;
                 }
+                double ts = clock.seconds(firstSample + i);
+                text.append("t=").append(ts).append(" | value = ").append(samples[0][i]).append('\n');
+            }
+            if (text.length() > 0) {
+                logView.append(text.toString());
+            }
+            if (signalPanel != null) {
+                signalPanel.addSamples(samples[0], count);
+            }
+            if (sessionPanel != null) {
+                sessionPanel.addSamples(samples, digital, count, firstSample);
             }
 
-            writer.newLine();
-            writer.flush();
+            rateWindowSamples += count;
+            long now = System.nanoTime();
+            if (now - rateWindowStart >= 1_000_000_000L) {
+                samplesPerSecond = rateWindowSamples * 1_000_000_000L / (now - rateWindowStart);
+                rateWindowStart = now;
+                rateWindowSamples = 0;
+            }
+            String status = String.format("Receiving %d samples/s | Display lag: %d ms",
+                    samplesPerSecond, batcher.getLastLagNanos() / 1_000_000);
+            if (clock.getWindows() >= 2) {
+                status += String.format(" | Clock drift: %+.1f ppm", clock.getDriftPpm());
+            }
+            QrsDetector detector = qrsDetector;
+            if (detector != null && !Double.isNaN(detector.getHeartRate())) {
+                status += String.format(" | Heart rate: %.0f bpm", detector.getHeartRate());
+            }
+            EmgEnvelope envelope = emgEnvelope;
+            if (envelope != null) {
+                status += String.format(" | EMG RMS: %.1f%s", envelope.getRms(), envelope.isActive() ? " (active)" : "");
+            }
+            statusLabel.setText(status);
+        }
 
-            SwingUtilities.invokeLater(() ->
-                    outputArea.append("Acquisition stopped.\n"));
+        @Override
+        public void onBlock(FrameBlock block) {
+            if (!started) {
+                batcher.start();
+                started = true;
+            }
+            batcher.offer(block);
+        }
 
-        } catch (Throwable ex) {
-            SwingUtilities.invokeLater(() ->
-                    outputArea.append("Error during acquisition: " + ex.getMessage() + "\n"));
-        } finally {
-            try {
-                if (writer != null) writer.close();
-            } catch (Exception ignored) {}
+        @Override
+        public void onStop(Throwable error) {
+            batcher.stop();
+            if (error == null) {
+                long lost = bitalino.getLostFrames();
+                SwingUtilities.invokeLater(() -> {
+                    outputArea.append("Acquisition stopped.\n");
+                    if (lost > 0) {
+                        outputArea.append("Frames lost on the Bluetooth link: " + lost + "\n");
+                    }
+                    outputArea.append("Maximum display lag: " + batcher.getMaxLagNanos() / 1_000_000 + " ms\n");
+                    if (clock.getWindows() >= 2) {
+                        outputArea.append(String.format("Device clock drift: %+.1f ppm\n", clock.getDriftPpm()));
+                    }
+                    QrsDetector detector = qrsDetector;
+                    if (detector != null) {
+                        outputArea.append("Beats detected: " + detector.getBeats() + "\n");
+                    }
+                    EmgEnvelope envelope = emgEnvelope;
+                    if (envelope != null) {
+                        outputArea.append("Muscle activations: " + envelope.getActivations() + "\n");
+                    }
+                });
+            } else {
+                SwingUtilities.invokeLater(() ->
+                        outputArea.append("Error during acquisition: " + error.getMessage() + "\n"));
+            }
         }
     }
 //98:D3:91:FD:69:49
@@ -0,0 +1,35 @@
+package ceu.biolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.microedition.io.Connector;
+import javax.microedition.io.StreamConnection;
+
+/// BITalino transport over a BlueCove RFCOMM (btspp) connection.
+public class BluetoothTransport implements BITalinoTransport {
+
+    /// Instance of the Bluetooth socket connection established with the BITalino device
+    private StreamConnection hSocket = null;
+
+    @Override
+    public void open(String macAdd) throws IOException {
+        hSocket = (StreamConnection) Connector.open("btspp://" + macAdd + ":1", Connector.READ_WRITE);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return hSocket.openInputStream();
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+        return hSocket.openOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        hSocket.close();
+        hSocket = null;
+    }
+}
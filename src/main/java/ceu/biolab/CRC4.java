@@ -0,0 +1,95 @@
+package ceu.biolab;
+
+/// Table-driven CRC4 (polynomial x^4 + x + 1) used to protect %BITalino frames.
+/// The CRC covers every bit of a frame except its own 4 bits (the low nibble of the last byte),
+/// which are taken as zero. This gives the same result as shifting each bit through the four-register
+/// LFSR of the original API, but with a single table lookup per byte.
+public final class CRC4 {
+
+    /// TABLE[(crc << 8) | b] is the CRC register after shifting byte b into register crc
+    private static final byte[] TABLE = new byte[16 * 256];
+
+    static {
+        for (int crc = 0; crc < 16; crc++) {
+            for (int b = 0; b < 256; b++) {
+                int r = crc;
+                for (int bit = 7; bit > -1; bit--) {
+                    int out = (r >> 3) & 0x01;
+                    r = ((r << 1) & 0x0F) | ((b >> bit) & 0x01);
+                    if (out != 0) {
+                        r ^= 0x03;
+                    }
+                }
+                TABLE[(crc << 8) | b] = (byte) r;
+            }
+        }
+    }
+
+    private CRC4() {}
+
+    /// Shifts one byte into a CRC register.
+    /// \param[in] crc Current register value (0...15)
+    /// \param[in] b Byte to shift in (only the low 8 bits are used)
+    public static int update(int crc, int b) {
+        return TABLE[(crc << 8) | (b & 0xFF)];
+    }
+
+    /// CRC register after shifting all the bytes in buf[off...off+len-1], starting from zero.
+    public static int register(byte[] buf, int off, int len) {
+        int crc = 0;
+        for (int i = off; i < off + len; i++) {
+            crc = TABLE[(crc << 8) | (buf[i] & 0xFF)];
+        }
+        return crc;
+    }
+
+    /// CRC4 of the frame stored in buf[off...off+len-1].
+    public static int compute(byte[] buf, int off, int len) {
+        int last = off + len - 1;
+        return TABLE[(register(buf, off, len - 1) << 8) | (buf[last] & 0xF0)];
+    }
+
+    /// Table to slide the register of a window of windowBytes bytes by one byte in constant time.
+    /// Entry b is the contribution of a leading byte b to the register once windowBytes more bytes have been
+    /// shifted in, so the CRC being linear,
+    /// register(buf, off + 1, windowBytes) == update(register(buf, off, windowBytes), buf[off + windowBytes]) ^ table[buf[off] & 0xFF]
+    public static byte[] slideTable(int windowBytes) {
+        byte[] table = new byte[256];
+        for (int b = 0; b < 256; b++) {
+            int crc = TABLE[b];
+            for (int i = 0; i < windowBytes; i++) {
+                crc = TABLE[crc << 8];
+            }
+            table[b] = (byte) crc;
+        }
+        return table;
+    }
+
+    /// true if the CRC nibble of the frame stored in buf[off...off+len-1] matches its contents.
+    public static boolean check(byte[] buf, int off, int len) {
+        return compute(buf, off, len) == (buf[off + len - 1] & 0x0F);
+    }
+
+    /// Validates a block of consecutive frames.
+    /// \param[in] buf Buffer with the raw bytes read from the device
+    /// \param[in] off Position of the first byte of the first frame
+    /// \param[in] frameBytes Size of each frame in bytes
+    /// \param[in] nFrames Number of frames to validate
+    /// \return Number of leading frames that passed the CRC check (nFrames if all of them did)
+    public static int countValid(byte[] buf, int off, int frameBytes, int nFrames) {
+        int tail = frameBytes - 1;
+        for (int n = 0; n < nFrames; n++) {
+            int start = off + n * frameBytes;
+            int last = start + tail;
+            int crc = 0;
+            for (int i = start; i < last; i++) {
+                crc = TABLE[(crc << 8) | (buf[i] & 0xFF)];
+            }
+            int b = buf[last];
+            if (TABLE[(crc << 8) | (b & 0xF0)] != (b & 0x0F)) {
+                return n;
+            }
+        }
+        return nFrames;
+    }
+}
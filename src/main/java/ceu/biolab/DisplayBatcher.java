@@ -0,0 +1,134 @@
+package ceu.biolab;
+
+import javax.swing.*;
+
+/// Hands samples from an acquisition thread over to Swing at display rate.
+/// offer() copies the samples of a block into a primitive ring; a Swing timer drains the ring on the event
+/// dispatch thread a few tens of times per second and passes everything received since the last tick to the
+/// listener in one call, so the EDT sees one event per displayed frame whatever the sampling rate.
+/// If the EDT falls more than the ring capacity behind, the oldest samples are skipped for display (the
+/// recording itself is not affected).
+///
+/// The lag is the time between a sample being offered and being delivered to the listener.
+public class DisplayBatcher {
+
+    /// Receives the batches on the event dispatch thread.
+    public interface Listener {
+        /// \param[in] samples samples[k][0...count-1] are the new values of the k-th acquired channel;
+        ///                    the arrays are reused and only valid during the call
+        /// \param[in] digital Digital states of the frames, as in FrameBlock
+        /// \param[in] count Number of frames in the batch
+        /// \param[in] firstSample Index of the first frame of the batch since the start of the acquisition
+        void onBatch(short[][] samples, byte[] digital, int count, long firstSample);
+    }
+
+    /// Default number of batches delivered per second
+    public static final int DEFAULT_FPS = 30;
+
+    private final Listener listener;
+    private final short[][] ring;
+    private final short[][] batch;
+    private final byte[] digitalRing;
+    private final byte[] digitalBatch;
+    private final long[] offeredNanos;
+    private final Timer timer;
+
+    // guarded by ring
+    private long written = 0;
+    private long read = 0;
+    private long skipped = 0;
+
+    private volatile long lastLagNanos = 0;
+    private volatile long maxLagNanos = 0;
+
+    /// \param[in] nChannels Number of analog channels in the blocks offered
+    /// \param[in] capacity Frames buffered between two deliveries (e.g. one second of signal)
+    /// \param[in] fps Deliveries per second
+    /// \param[in] listener Receiver of the batches
+    public DisplayBatcher(int nChannels, int capacity, int fps, Listener listener) {
+        this.listener = listener;
+        this.ring = new short[nChannels][capacity];
+        this.batch = new short[nChannels][capacity];
+        this.digitalRing = new byte[capacity];
+        this.digitalBatch = new byte[capacity];
+        this.offeredNanos = new long[capacity];
+        this.timer = new Timer(1000 / fps, e -> deliver());
+        timer.setCoalesce(true);
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    /// Stops the timer and delivers the samples still waiting (asynchronously, on the EDT).
+    public void stop() {
+        timer.stop();
+        SwingUtilities.invokeLater(this::deliver);
+    }
+
+    /// Queues the frames of a block for display. Called from the acquisition side; never waits for the EDT.
+    public void offer(FrameBlock block) {
+        int capacity = offeredNanos.length;
+        long now = System.nanoTime();
+        synchronized (ring) {
+            for (int i = 0; i < block.size; i++) {
+                int slot = (int) (written % capacity);
+                for (int k = 0; k < ring.length; k++) {
+                    ring[k][slot] = block.analog[k][i];
+                }
+                digitalRing[slot] = block.digital[i];
+                offeredNanos[slot] = now;
+                written++;
+            }
+            if (written - read > capacity) {
+                skipped += written - read - capacity;
+                read = written - capacity;
+            }
+        }
+    }
+
+    /// Delay of the last batch delivered, in ns.
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    /// Longest delay of a batch since the batcher was created, in ns.
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /// Frames never delivered because the EDT was too far behind.
+    public long getSkippedFrames() {
+        synchronized (ring) {
+            return skipped;
+        }
+    }
+
+    private void deliver() {
+        int capacity = offeredNanos.length;
+        int count;
+        long first;
+        long offered;
+        synchronized (ring) {
+            count = (int) (written - read);
+            if (count == 0) {
+                return;
+            }
+            first = read;
+            offered = offeredNanos[(int) (read % capacity)];
+            int start = (int) (read % capacity);
+            int n1 = Math.min(count, capacity - start);
+            for (int k = 0; k < ring.length; k++) {
+                System.arraycopy(ring[k], start, batch[k], 0, n1);
+                System.arraycopy(ring[k], 0, batch[k], n1, count - n1);
+            }
+            System.arraycopy(digitalRing, start, digitalBatch, 0, n1);
+            System.arraycopy(digitalRing, 0, digitalBatch, n1, count - n1);
+            read = written;
+        }
+        listener.onBatch(batch, digitalBatch, count, first);
+        long lag = System.nanoTime() - offered;
+        lastLagNanos = lag;
+        maxLagNanos = Math.max(maxLagNanos, lag);
+    }
+}
@@ -0,0 +1,115 @@
+package ceu.biolab;
+
+import java.io.File;
+import java.io.IOException;
+
+/// Runs an EmgEnvelope on the first acquired channel and stores its results next to the recording, so
+/// reports on the activations need no second pass over the raw signal.
+/// Two CSV files are written, both starting with a line with their rate in Hz and a header line:
+/// - the envelope, ENVELOPE_HZ rows per second (every sample below that rate): sample,arv,rms,active
+/// - the activations, one row each: onset,offset,duration_ms,peak_rms
+///
+/// Sample indices count from the start of the recording and ARV and RMS are in ADC units. An activation
+/// still in progress when the acquisition stops ends at its last sample.
+public class EmgAnalysisSink implements FrameSink {
+
+    /// Rate of the stored envelope, in Hz
+    public static final int ENVELOPE_HZ = 100;
+
+    private final EmgEnvelope envelope;
+    private final AsciiWriter envelopeWriter;
+    private final AsciiWriter activationWriter;
+    private final int samplingRate;
+    private final int step;
+    private long samples = 0;
+    /// First write error of the listener, which cannot throw; reported by the next onBlock()
+    private IOException activationError;
+
+    /// Creates both files and writes their header lines.
+    /// \param[in] envelopeFile Destination of the envelope
+    /// \param[in] activationFile Destination of the activations
+    /// \param[in] samplingRate Sampling rate in Hz, at least 100
+    /// \param[in] mainsHz Mains frequency removed before the analysis
+    public EmgAnalysisSink(File envelopeFile, File activationFile, int samplingRate, int mainsHz) throws IOException {
+        this.envelope = new EmgEnvelope(samplingRate, mainsHz, this::writeActivation);
+        this.samplingRate = samplingRate;
+        this.step = Math.max(1, samplingRate / ENVELOPE_HZ);
+        envelopeWriter = new AsciiWriter(envelopeFile);
+        try {
+            activationWriter = new AsciiWriter(activationFile);
+        } catch (IOException e) {
+            envelopeWriter.close();
+            throw e;
+        }
+        envelopeWriter.putInt(samplingRate / step);
+        envelopeWriter.newLine();
+        envelopeWriter.put("sample,arv,rms,active");
+        envelopeWriter.newLine();
+        activationWriter.putInt(samplingRate);
+        activationWriter.newLine();
+        activationWriter.put("onset,offset,duration_ms,peak_rms");
+        activationWriter.newLine();
+    }
+
+    /// The live analysis, e.g. for the current RMS.
+    public EmgEnvelope getEnvelope() {
+        return envelope;
+    }
+
+    @Override
+    public void onBlock(FrameBlock block) throws IOException {
+        short[] analog = block.analog(0);
+        int i = 0;
+        while (i < block.size()) {
+            // up to the next stored envelope sample
+            int count = (int) Math.min(block.size() - i, step - samples % step);
+            envelope.process(analog, i, count);
+            i += count;
+            samples += count;
+            if (samples % step == 0) {
+                envelopeWriter.putLong(samples - 1);
+                envelopeWriter.put(',');
+                envelopeWriter.putDecimal(envelope.getArv(), 1);
+                envelopeWriter.put(',');
+                envelopeWriter.putDecimal(envelope.getRms(), 1);
+                envelopeWriter.put(',');
+                envelopeWriter.put(envelope.isActive() ? '1' : '0');
+                envelopeWriter.newLine();
+            }
+        }
+        if (activationError != null) {
+            throw activationError;
+        }
+    }
+
+    @Override
+    public void onStop(Throwable error) throws IOException {
+        envelope.finish();
+        try {
+            envelopeWriter.close();
+        } finally {
+            activationWriter.close();
+        }
+        if (activationError != null) {
+            throw activationError;
+        }
+    }
+
+    private void writeActivation(long onset, long offset, double peakRms) {
+        if (activationError != null) {
+            return;
+        }
+        try {
+            activationWriter.putLong(onset);
+            activationWriter.put(',');
+            activationWriter.putLong(offset);
+            activationWriter.put(',');
+            activationWriter.putLong((offset - onset) * 1000 / samplingRate);
+            activationWriter.put(',');
+            activationWriter.putDecimal(peakRms, 1);
+            activationWriter.newLine();
+        } catch (IOException e) {
+            activationError = e;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ceu.biolab;
+
+/// Streaming EMG envelope and muscle activation detector.
+/// The signal goes through the EMG band-pass of FilterChain (DC, movement artifacts and mains removed) and is
+/// rounded to integers; the average rectified value (ARV) and the RMS over a sliding window are then kept
+/// with running sums of |x| and x^2 over a ring of the window, exact in integer arithmetic, so each sample
+/// costs O(1) whatever the window length.
+///
+/// Activation is detected on the RMS with hysteresis: an onset needs the RMS above the on threshold for
+/// MIN_ON_SECONDS, an offset needs it below the (lower) off threshold for MIN_OFF_SECONDS, so noise around a
+/// single threshold does not split an activation. The thresholds are set explicitly, or learnt as the mean
+/// RMS plus 3 (on) and 1.5 (off) standard deviations of the rectified signal during the first
+/// CALIBRATION_SECONDS of signal after the filter has settled, which must then be recorded at rest. The
+/// deviation of the rectified samples is used because the RMS, averaged over a window, hardly varies at
+/// rest and would leave the two thresholds on top of the rest level. An onset is reported at the first
+/// sample of the run above the on threshold: the window takes in a contraction from its first sample, so
+/// the RMS crosses a threshold near the rest level almost at once. An offset is reported at the first
+/// sample of the run below the off threshold moved back by a window, as the RMS only falls to the rest
+/// level once the contraction has left the window.
+public class EmgEnvelope {
+
+    /// Receives the activations, on the thread calling process().
+    public interface Listener {
+        /// \param[in] sample Index of the onset, since the first sample processed
+        default void onOnset(long sample) {}
+
+        /// \param[in] onset Index of the onset of the activation
+        /// \param[in] offset Index of its offset (exclusive)
+        /// \param[in] peakRms Largest RMS during the activation
+        void onActivation(long onset, long offset, double peakRms);
+    }
+
+    /// Default length of the ARV/RMS window, in s
+    public static final double DEFAULT_WINDOW_SECONDS = 0.100;
+    public static final double CALIBRATION_SECONDS = 1;
+    public static final double MIN_ON_SECONDS = 0.030;
+    public static final double MIN_OFF_SECONDS = 0.060;
+
+    private static final double ON_DEVIATIONS = 3;
+    private static final double OFF_DEVIATIONS = 1.5;
+    /// Start-up transient of the band-pass, left out of the calibration
+    private static final double SETTLE_SECONDS = 0.2;
+
+    private final FilterChain band;
+    private final Listener listener;
+    private final int[] ring;
+    private int ringPos = 0;
+    private long sumAbs = 0;
+    private long sumSquares = 0;
+    private long n = 0;
+
+    private final long minOn;
+    private final long minOff;
+    private final long calibrationStart;
+    private final long calibrationEnd;
+    private long calibrated = 0;
+    private double calibrationMean = 0;
+    /// Sums of |x| and x^2 of the filtered samples during the calibration
+    private long calibrationAbs = 0;
+    private long calibrationSquares = 0;
+    private boolean thresholdsSet = false;
+    private double onThreshold = Double.POSITIVE_INFINITY;
+    private double offThreshold = Double.POSITIVE_INFINITY;
+
+    private volatile boolean active = false;
+    private long run = 0;
+    private long onset = 0;
+    private double peakRms = 0;
+    private volatile double arv = 0;
+    private volatile double rms = 0;
+    private volatile long activations = 0;
+
+    public EmgEnvelope(int samplingRate, int mainsHz, Listener listener) {
+        this(samplingRate, mainsHz, DEFAULT_WINDOW_SECONDS, listener);
+    }
+
+    /// \param[in] samplingRate Sampling rate in Hz, at least 100
+    /// \param[in] mainsHz Mains frequency removed (50 or 60 Hz)
+    /// \param[in] windowSeconds Length of the ARV/RMS window
+    /// \param[in] listener Receiver of the activations, or null to only use the getters
+    public EmgEnvelope(int samplingRate, int mainsHz, double windowSeconds, Listener listener) {
+        if (samplingRate < 100) {
+            throw new IllegalArgumentException("EMG analysis needs at least 100 Hz");
+        }
+        this.band = FilterChain.forPreset(FilterChain.Preset.EMG, 1, samplingRate, mainsHz);
+        this.listener = listener;
+        this.ring = new int[Math.max(1, (int) Math.round(windowSeconds * samplingRate))];
+        this.minOn = Math.max(1, Math.round(MIN_ON_SECONDS * samplingRate));
+        this.minOff = Math.max(1, Math.round(MIN_OFF_SECONDS * samplingRate));
+        this.calibrationStart = Math.round(SETTLE_SECONDS * samplingRate) + ring.length;
+        this.calibrationEnd = calibrationStart + Math.round(CALIBRATION_SECONDS * samplingRate);
+    }
+
+    /// Uses the given thresholds (RMS, in ADC units) instead of learning them at rest.
+    public void setThresholds(double on, double off) {
+        onThreshold = on;
+        offThreshold = off;
+        thresholdsSet = true;
+    }
+
+    public double getOnThreshold() {
+        return onThreshold;
+    }
+
+    public double getOffThreshold() {
+        return offThreshold;
+    }
+
+    /// Length of the ARV/RMS window, in samples.
+    public int getWindow() {
+        return ring.length;
+    }
+
+    /// Average rectified value over the last window, in ADC units.
+    public double getArv() {
+        return arv;
+    }
+
+    /// RMS over the last window, in ADC units.
+    public double getRms() {
+        return rms;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /// Number of activations completed (onset and offset) so far.
+    public long getActivations() {
+        return activations;
+    }
+
+    /// Number of samples processed.
+    public long getSamples() {
+        return n;
+    }
+
+    /// Feeds the next samples of the EMG.
+    public void process(short[] samples, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            next(samples[i]);
+        }
+    }
+
+    /// Ends an activation still in progress at the last sample processed, e.g. when the recording stops.
+    public void finish() {
+        if (active) {
+            end(n);
+        }
+    }
+
+    private void next(int x) {
+        int y = (int) Math.round(band.filter(0, x));
+        int old = ring[ringPos];
+        ring[ringPos] = y;
+        ringPos = ringPos + 1 == ring.length ? 0 : ringPos + 1;
+        sumAbs += Math.abs(y) - Math.abs(old);
+        sumSquares += (long) y * y - (long) old * old;
+        double currentRms = Math.sqrt(sumSquares / (double) ring.length);
+        arv = sumAbs / (double) ring.length;
+        rms = currentRms;
+
+        if (!thresholdsSet) {
+            if (n >= calibrationStart && n < calibrationEnd) {
+                calibrated++;
+                calibrationMean += (currentRms - calibrationMean) / calibrated;
+                calibrationAbs += Math.abs(y);
+                calibrationSquares += (long) y * y;
+            } else if (n == calibrationEnd) {
+                double count = Math.max(1, calibrated);
+                double meanAbs = calibrationAbs / count;
+                double sd = Math.sqrt(Math.max(0, calibrationSquares / count - meanAbs * meanAbs));
+                setThresholds(calibrationMean + ON_DEVIATIONS * sd, calibrationMean + OFF_DEVIATIONS * sd);
+            }
+        }
+
+        if (!active) {
+            run = currentRms > onThreshold ? run + 1 : 0;
+            if (run >= minOn) {
+                active = true;
+                onset = n - run + 1;
+                peakRms = currentRms;
+                run = 0;
+                if (listener != null) {
+                    listener.onOnset(onset);
+                }
+            }
+        } else {
+            peakRms = Math.max(peakRms, currentRms);
+            run = currentRms < offThreshold ? run + 1 : 0;
+            if (run >= minOff) {
+                end(Math.max(onset + 1, n - run + 2 - ring.length));
+            }
+        }
+        n++;
+    }
+
+    private void end(long offset) {
+        active = false;
+        run = 0;
+        activations++;
+        if (listener != null) {
+            listener.onActivation(onset, offset, peakRms);
+        }
+    }
+}
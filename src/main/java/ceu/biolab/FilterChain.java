@@ -0,0 +1,134 @@
+package ceu.biolab;
+
+import java.util.Arrays;
+
+/// Cascade of Biquad sections applied to every analog channel of a stream, in place.
+/// Each channel keeps its own state (two values per section, transposed direct form II), so blocks can be
+/// filtered one after the other as they arrive: the output is the same as filtering the whole signal at once,
+/// every sample leaves the chain in the block it arrived in, and no memory is allocated per block or sample.
+/// The state of a channel starts as the steady state for a constant signal equal to its first sample, so the
+/// ~512 offset of the raw ADC values does not enter as a step and ring through the chain at start-up.
+///
+/// Presets condition ECG and EMG for display: DC and baseline wander removal, a band-pass around the band
+/// of the signal and a notch at the mains frequency. Sections whose frequency is not below half the sampling
+/// rate are left out (e.g. the EMG low-pass at 100 Hz).
+public class FilterChain {
+
+    /// Signal types with a preset
+    public enum Preset {
+        /// 0.5-40 Hz band, as in monitoring mode ECG
+        ECG,
+        /// 20-450 Hz band, the usual surface EMG band
+        EMG
+    }
+
+    /// Q of the mains notch: about 2 Hz wide at 50 Hz
+    private static final double NOTCH_Q = 25;
+
+    private final Biquad[] sections;
+    /// state[k][2 s] and state[k][2 s + 1] are the two delays of section s on channel k
+    private final double[][] state;
+    /// Whether the state of each channel has been initialised from its first sample
+    private final boolean[] primed;
+
+    public FilterChain(int nChannels, Biquad... sections) {
+        this.sections = sections.clone();
+        this.state = new double[nChannels][2 * sections.length];
+        this.primed = new boolean[nChannels];
+    }
+
+    /// Chain conditioning the given type of signal.
+    /// \param[in] preset Type of signal
+    /// \param[in] nChannels Number of channels filtered
+    /// \param[in] samplingRate Sampling rate in Hz
+    /// \param[in] mainsHz Mains frequency (50 or 60 Hz)
+    public static FilterChain forPreset(Preset preset, int nChannels, int samplingRate, int mainsHz) {
+        double low = preset == Preset.ECG ? 0.5 : 20;
+        double high = preset == Preset.ECG ? 40 : 450;
+        double nyquist = samplingRate / 2.0;
+        Biquad[] candidates = new Biquad[4];
+        int n = 0;
+        candidates[n++] = Biquad.dcBlocker(samplingRate, low / 2);
+        if (low < nyquist) {
+            candidates[n++] = Biquad.highPass(samplingRate, low, Biquad.BUTTERWORTH_Q);
+        }
+        if (high < nyquist) {
+            candidates[n++] = Biquad.lowPass(samplingRate, high, Biquad.BUTTERWORTH_Q);
+        }
+        if (mainsHz < nyquist) {
+            candidates[n++] = Biquad.notch(samplingRate, mainsHz, NOTCH_Q);
+        }
+        Biquad[] sections = new Biquad[n];
+        System.arraycopy(candidates, 0, sections, 0, n);
+        return new FilterChain(nChannels, sections);
+    }
+
+    public int getSections() {
+        return sections.length;
+    }
+
+    /// Gain of the whole chain at a frequency.
+    public double gain(double samplingRate, double frequency) {
+        double gain = 1;
+        for (Biquad section : sections) {
+            gain *= section.gain(samplingRate, frequency);
+        }
+        return gain;
+    }
+
+    /// Forgets the past of every channel, e.g. before a new recording.
+    public void reset() {
+        for (double[] s : state) {
+            Arrays.fill(s, 0);
+        }
+        Arrays.fill(primed, false);
+    }
+
+    /// Filters the analog channels of a block in place.
+    public void process(FrameBlock block) {
+        for (int k = 0; k < block.analog.length; k++) {
+            process(k, block.analog[k], 0, block.size);
+        }
+    }
+
+    /// Filters samples of one channel in place; the results are rounded and clamped to the short range.
+    /// \param[in] channel Channel whose state is used
+    /// \param[in,out] samples Samples to filter
+    /// \param[in] from Index of the first sample
+    /// \param[in] count Number of samples
+    public void process(int channel, short[] samples, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            long rounded = Math.round(filter(channel, samples[i]));
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, rounded));
+        }
+    }
+
+    /// Filters the next sample of a channel, without rounding (for further processing, see QrsDetector).
+    public double filter(int channel, double x) {
+        double[] z = state[channel];
+        if (!primed[channel]) {
+            prime(z, x);
+            primed[channel] = true;
+        }
+        for (int s = 0, j = 0; s < sections.length; s++, j += 2) {
+            Biquad q = sections[s];
+            double y = q.b0 * x + z[j];
+            z[j] = q.b1 * x - q.a1 * y + z[j + 1];
+            z[j + 1] = q.b2 * x - q.a2 * y;
+            x = y;
+        }
+        return x;
+    }
+
+    /// Sets the delays of a channel to those left by an endless constant input x: each section then outputs
+    /// its DC gain times its input, (b0 + b1 + b2) / (1 + a1 + a2).
+    private void prime(double[] z, double x) {
+        for (int s = 0, j = 0; s < sections.length; s++, j += 2) {
+            Biquad q = sections[s];
+            double y = (q.b0 + q.b1 + q.b2) / (1 + q.a1 + q.a2) * x;
+            z[j] = y - q.b0 * x;
+            z[j + 1] = q.b2 * x - q.a2 * y;
+            x = y;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ceu.biolab;
+
+/// Runs the blocks through a FilterChain before passing them to another sink.
+/// The engine hands every sink its own copy of the blocks, so the filtering (done in place) only affects
+/// what this sink forwards; the other sinks, e.g. the recordings, still receive the raw signal.
+public class FilteringSink implements FrameSink {
+
+    private final FrameSink downstream;
+    private final FilterChain chain;
+
+    public FilteringSink(FrameSink downstream, FilterChain chain) {
+        this.downstream = downstream;
+        this.chain = chain;
+    }
+
+    public FilterChain getChain() {
+        return chain;
+    }
+
+    @Override
+    public void onBlock(FrameBlock block) throws Exception {
+        chain.process(block);
+        downstream.onBlock(block);
+    }
+
+    @Override
+    public void onDropped(long blocks) {
+        downstream.onDropped(blocks);
+    }
+
+    @Override
+    public void onStop(Throwable error) throws Exception {
+        downstream.onStop(error);
+    }
+}
@@ -1,6 +1,7 @@
 package ceu.biolab;
 
 /// A frame returned by BITalino.read()
+/// Kept for compatibility: frames are decoded into a FrameBlock (see BITalino.readBlock()) and a Frame is only a copy of one of its rows.
 public class Frame {
         /// CRC4 check function result for the frame
 	public int CRC;
@@ -0,0 +1,96 @@
+package ceu.biolab;
+
+/// A block of consecutive frames stored column-wise (struct of arrays).
+/// Each analog channel is a primitive short[] and the digital states and sequence numbers are byte[],
+/// so a block costs a handful of arrays however many frames it holds, and a channel can be processed
+/// as one contiguous array. Frame objects are only built on demand through toFrame()/toFrames().
+public class FrameBlock {
+
+    /// Analog values per acquired channel, analog[k][i] is the k-th acquired channel of frame i
+    final short[][] analog;
+
+    /// Digital states of each frame as sent by the device: bit 3 is digital[0] ... bit 0 is digital[3]
+    final byte[] digital;
+
+    /// Sequence number (0...15) of each frame
+    final byte[] seq;
+
+    /// Number of frames currently held
+    int size = 0;
+
+    /// \param[in] nChannels Number of analog channels acquired (1...6)
+    /// \param[in] capacity Maximum number of frames the block can hold
+    public FrameBlock(int nChannels, int capacity) {
+        analog = new short[nChannels][capacity];
+        digital = new byte[capacity];
+        seq = new byte[capacity];
+    }
+
+    public int channels() {
+        return analog.length;
+    }
+
+    public int capacity() {
+        return seq.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /// Backing array of an analog channel; only the first size() values are meaningful.
+    /// \param[in] channel Position of the channel among the acquired ones (0 for the first channel passed to start())
+    public short[] analog(int channel) {
+        return analog[channel];
+    }
+
+    public int getAnalog(int channel, int index) {
+        return analog[channel][index];
+    }
+
+    /// State (0 or 1) of a digital port, in the same order as Frame.digital.
+    public int getDigital(int port, int index) {
+        return (digital[index] >> (3 - port)) & 0x01;
+    }
+
+    public int getSeq(int index) {
+        return seq[index];
+    }
+
+    /// Copies the frames held by another block, which must have the same number of channels and fit in this one.
+    public void copyFrom(FrameBlock src) {
+        int n = src.size;
+        for (int k = 0; k < analog.length; k++) {
+            System.arraycopy(src.analog[k], 0, analog[k], 0, n);
+        }
+        System.arraycopy(src.digital, 0, digital, 0, n);
+        System.arraycopy(src.seq, 0, seq, 0, n);
+        size = n;
+    }
+
+    /// Builds a Frame with the values of one frame of the block.
+    public Frame toFrame(int index) {
+        Frame frame = new Frame();
+        frame.seq = seq[index];
+        for (int k = 0; k < analog.length; k++) {
+            frame.analog[k] = analog[k][index];
+        }
+        for (int port = 0; port < 4; port++) {
+            frame.digital[port] = getDigital(port, index);
+        }
+        return frame;
+    }
+
+    /// Builds Frame objects for all the frames held, for code written against BITalino.read().
+    public Frame[] toFrames() {
+        Frame[] frames = new Frame[size];
+        for (int i = 0; i < size; i++) {
+            frames[i] = toFrame(i);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,50 @@
+package ceu.biolab;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/// Small, fixed set of FrameBlocks recycled between the thread reading the device and the code
+/// consuming the blocks, so a steady-state acquisition loop does not allocate.
+/// Blocks are created lazily up to maxBlocks; after that acquire() waits for a block to be released.
+public class FrameBlockPool {
+
+    private final ArrayBlockingQueue<FrameBlock> free;
+    private final int nChannels;
+    private final int blockSize;
+    private final int maxBlocks;
+    private int created = 0;
+
+    /// \param[in] nChannels Number of analog channels of each block
+    /// \param[in] blockSize Capacity (frames) of each block
+    /// \param[in] maxBlocks Maximum number of blocks the pool hands out at the same time
+    public FrameBlockPool(int nChannels, int blockSize, int maxBlocks) {
+        this.free = new ArrayBlockingQueue<>(maxBlocks);
+        this.nChannels = nChannels;
+        this.blockSize = blockSize;
+        this.maxBlocks = maxBlocks;
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    /// Takes an empty block from the pool, creating it if the pool has not reached maxBlocks yet.
+    public FrameBlock acquire() throws InterruptedException {
+        FrameBlock block = free.poll();
+        if (block != null) {
+            return block;
+        }
+        synchronized (this) {
+            if (created < maxBlocks) {
+                created++;
+                return new FrameBlock(nChannels, blockSize);
+            }
+        }
+        return free.take();
+    }
+
+    /// Gives a block back to the pool. The block must not be used by the caller afterwards.
+    public void release(FrameBlock block) {
+        block.clear();
+        free.offer(block);
+    }
+}
@@ -0,0 +1,113 @@
+package ceu.biolab;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Lock-free ring of preallocated FrameBlocks written by a single producer and read by any number of
+/// independent consumers, each with its own Reader.
+/// The producer never waits for consumers: a consumer that falls more than capacity blocks behind
+/// loses the oldest blocks, which are counted as dropped. Consumers copy a block out and then check
+/// that the producer did not start overwriting it meanwhile (seqlock style), so a torn block is
+/// dropped rather than delivered.
+public class FrameRing {
+
+    private final FrameBlock[] slots;
+    private final int mask;
+
+    /// Sequence of the block the producer is writing, and of the last block it published (-1 for none)
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong published = new AtomicLong(-1);
+    private volatile boolean closed = false;
+
+    /// \param[in] capacity Number of blocks in the ring (rounded up to a power of two)
+    /// \param[in] nChannels Number of analog channels of each block
+    /// \param[in] blockSize Capacity (frames) of each block
+    public FrameRing(int capacity, int nChannels, int blockSize) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new FrameBlock[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new FrameBlock(nChannels, blockSize);
+        }
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /// Producer: returns the (emptied) block to fill next. It becomes visible to consumers on publish().
+    public FrameBlock claim() {
+        long seq = claimed.get() + 1;
+        claimed.set(seq);
+        // the claim must be visible before the slot is overwritten
+        VarHandle.storeStoreFence();
+        FrameBlock block = slots[(int) (seq & mask)];
+        block.clear();
+        return block;
+    }
+
+    /// Producer: publishes the block returned by the last claim().
+    public void publish() {
+        published.set(claimed.get());
+    }
+
+    /// Producer: marks the end of the stream. Consumers see every block published before this call.
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /// Number of blocks published so far.
+    public long published() {
+        return published.get() + 1;
+    }
+
+    /// Creates a consumer that starts with the next block to be published.
+    public Reader newReader() {
+        return new Reader(published.get() + 1);
+    }
+
+    /// Read cursor of one consumer. A Reader must only be used by one thread.
+    public class Reader {
+
+        private long next;
+        private long dropped = 0;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /// Number of blocks this consumer lost because it fell behind the producer.
+        public long dropped() {
+            return dropped;
+        }
+
+        /// Copies the next published block into dest.
+        /// \return false if no new block has been published yet
+        public boolean poll(FrameBlock dest) {
+            while (true) {
+                long last = published.get();
+                if (next > last) {
+                    return false;
+                }
+                if (last - next >= slots.length) {
+                    dropped += last - slots.length + 1 - next;
+                    next = last - slots.length + 1;
+                }
+                dest.copyFrom(slots[(int) (next & mask)]);
+                VarHandle.loadLoadFence();
+                if (claimed.get() - next >= slots.length) {
+                    // overwritten while copying
+                    dropped++;
+                    next++;
+                    continue;
+                }
+                next++;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ceu.biolab;
+
+/// Consumer of the blocks read by an AcquisitionEngine.
+/// Each sink runs on its own thread, so a slow sink never delays the device reads or the other sinks.
+public interface FrameSink {
+
+    /// Called for every block read from the device. The block is only valid during the call.
+    void onBlock(FrameBlock block) throws Exception;
+
+    /// Called when blocks were lost because this sink fell too far behind the device.
+    default void onDropped(long blocks) {}
+
+    /// Called once when the acquisition ends, after the last block.
+    /// \param[in] error Cause of the end if the acquisition or this sink failed, null if it was stopped
+    default void onStop(Throwable error) throws Exception {}
+}
@@ -0,0 +1,102 @@
+package ceu.biolab;
+
+/// Keeps the timeline of a recording sample-accurate by putting placeholder frames where frames were lost,
+/// either on the link (detected from the sequence numbers) or because the sink fell behind the engine.
+/// Sits in front of another sink and forwards it the completed blocks.
+public class GapFillingSink implements FrameSink {
+
+    /// How the values of the placeholder frames are chosen
+    public enum Mode {
+        /// Repeat the last frame received
+        HOLD,
+        /// Interpolate linearly between the frames around the gap
+        INTERPOLATE
+    }
+
+    private final FrameSink downstream;
+    private final Mode mode;
+    private final SequenceTracker tracker = new SequenceTracker();
+    private FrameBlock out = null;
+    private int[] previous = null;
+    private byte previousDigital = 0;
+    private long droppedFrames = 0;
+    private long filledFrames = 0;
+
+    public GapFillingSink(FrameSink downstream, Mode mode) {
+        this.downstream = downstream;
+        this.mode = mode;
+    }
+
+    /// Frame sequence statistics of the blocks received.
+    public SequenceTracker getTracker() {
+        return tracker;
+    }
+
+    /// Number of placeholder frames inserted.
+    public long getFilledFrames() {
+        return filledFrames;
+    }
+
+    @Override
+    public void onBlock(FrameBlock block) throws Exception {
+        int nChannels = block.channels();
+        if (out == null) {
+            out = new FrameBlock(nChannels, block.capacity());
+            previous = new int[nChannels];
+        }
+        for (int i = 0; i < block.size(); i++) {
+            long missing = tracker.next(block.seq[i], droppedFrames);
+            droppedFrames = 0;
+            int seq = block.seq[i];
+            for (long m = 1; m <= missing; m++) {
+                int n = reserve();
+                for (int k = 0; k < nChannels; k++) {
+                    int value = previous[k];
+                    if (mode == Mode.INTERPOLATE) {
+                        value += (int) ((block.analog[k][i] - previous[k]) * m / (missing + 1));
+                    }
+                    out.analog[k][n] = (short) value;
+                }
+                out.digital[n] = previousDigital;
+                out.seq[n] = (byte) ((seq - missing - 1 + m) & 0x0F);
+                filledFrames++;
+            }
+            int n = reserve();
+            for (int k = 0; k < nChannels; k++) {
+                previous[k] = block.analog[k][i];
+                out.analog[k][n] = block.analog[k][i];
+            }
+            previousDigital = block.digital[i];
+            out.digital[n] = previousDigital;
+            out.seq[n] = (byte) seq;
+        }
+        flush();
+    }
+
+    /// Makes room for one more frame in the output block, forwarding it if it is full.
+    private int reserve() throws Exception {
+        if (out.size == out.capacity()) {
+            flush();
+        }
+        return out.size++;
+    }
+
+    private void flush() throws Exception {
+        if (out.size > 0) {
+            downstream.onBlock(out);
+            out.clear();
+        }
+    }
+
+    @Override
+    public void onDropped(long blocks) {
+        // the engine always reads full blocks, so the frames dropped are known exactly
+        droppedFrames += blocks * (out != null ? out.capacity() : 0);
+        downstream.onDropped(blocks);
+    }
+
+    @Override
+    public void onStop(Throwable error) throws Exception {
+        downstream.onStop(error);
+    }
+}
@@ -0,0 +1,67 @@
+package ceu.biolab;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/// Keeps a JTextArea used as a live log down to a maximum number of lines.
+/// The oldest lines are dropped as new ones arrive, in one removal every maxLines/TRIM_FRACTION lines,
+/// so the Document behaves like a ring of lines: its size, and the cost of an append, stay bounded
+/// however long the application runs. Lines appended to the area directly are trimmed too, on the next append().
+///
+/// Must be used from the event dispatch thread.
+public class LogView {
+
+    /// Default maximum number of lines kept
+    public static final int DEFAULT_MAX_LINES = 2000;
+
+    /// The area may exceed the cap by maxLines / TRIM_FRACTION lines before being trimmed
+    private static final int TRIM_FRACTION = 10;
+
+    private final JTextArea area;
+    private int maxLines;
+
+    public LogView(JTextArea area) {
+        this(area, DEFAULT_MAX_LINES);
+    }
+
+    public LogView(JTextArea area, int maxLines) {
+        this.area = area;
+        this.maxLines = maxLines;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    public void setMaxLines(int maxLines) {
+        this.maxLines = maxLines;
+        trim(0);
+    }
+
+    /// Appends text (one or more lines ending in '\n'), drops the oldest lines over the cap
+    /// and scrolls to the end.
+    public void append(String text) {
+        area.append(text);
+        trim(Math.max(1, maxLines / TRIM_FRACTION));
+        area.setCaretPosition(area.getDocument().getLength());
+    }
+
+    /// Removes the oldest lines if there are more than maxLines + slack.
+    private void trim(int slack) {
+        Document doc = area.getDocument();
+        Element root = doc.getDefaultRootElement();
+        // the text after the last '\n' counts as one more line
+        int lines = root.getElementCount() - 1;
+        if (lines <= maxLines + slack) {
+            return;
+        }
+        int end = root.getElement(lines - maxLines - 1).getEndOffset();
+        try {
+            doc.remove(0, end);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ceu.biolab;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/// Merges the streams of several devices into one CSV recording on a common timeline.
+/// Each device feeds its own lane (a FrameSink) placed at a start offset, in samples, on the session timeline;
+/// a writer thread emits one row per timeline sample once every running device has delivered it, leaving the
+/// cells of a device empty before it started and after it stopped.
+/// Lanes are single-producer/single-consumer rings of primitive samples, so memory stays bounded however long
+/// the session is; a lane whose ring is full makes its own sink thread wait, never the device reader.
+public class MergedRecordingWriter {
+
+    /// Frames buffered per device while waiting for the slower devices
+    private static final int LANE_FRAMES = 1 << 13;
+
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private final File file;
+    private final int samplingRate;
+    private final Lane[] lanes;
+    private Thread writerThread;
+    private volatile Throwable error = null;
+
+    /// \param[in] file File to write
+    /// \param[in] samplingRate Sampling rate shared by all the devices
+    /// \param[in] nDevices Number of lanes (one per device)
+    public MergedRecordingWriter(File file, int samplingRate, int nDevices) {
+        this.file = file;
+        this.samplingRate = samplingRate;
+        this.lanes = new Lane[nDevices];
+    }
+
+    /// Declares the lane of a device. Must be called for every lane before start().
+    /// \param[in] index Lane index (0...nDevices-1), which is also the column order
+    /// \param[in] name Device name used in the column headers
+    /// \param[in] channels Analog channels acquired from the device, as in BITalino.start()
+    /// \param[in] offset Position of the first sample of the device on the session timeline
+    /// \return The sink the device must feed
+    public FrameSink lane(int index, String name, int[] channels, long offset) {
+        lanes[index] = new Lane(name, channels, offset);
+        return lanes[index];
+    }
+
+    /// Cause of the failure of the writer thread, if any.
+    public Throwable getError() {
+        return error;
+    }
+
+    public void start() {
+        writerThread = new Thread(this::writeLoop, "bitalino-merge");
+        writerThread.start();
+    }
+
+    /// Waits until every lane has ended and all its samples were written.
+    public void join() throws InterruptedException {
+        writerThread.join();
+    }
+
+    private void writeLoop() {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
+            writer.write(String.valueOf(samplingRate));
+            writer.newLine();
+            writer.write("sample");
+            for (Lane lane : lanes) {
+                for (int channel : lane.channels) {
+                    writer.write("," + lane.name + ":A" + (channel + 1));
+                }
+            }
+            writer.newLine();
+
+            long t = 0;
+            while (true) {
+                long end = Long.MAX_VALUE;
+                long last = 0;
+                boolean allEnded = true;
+                for (Lane lane : lanes) {
+                    boolean ended = lane.ended;
+                    long available = lane.offset + lane.written.get();
+                    last = Math.max(last, available);
+                    if (!ended) {
+                        allEnded = false;
+                        end = Math.min(end, available);
+                    }
+                }
+                if (allEnded) {
+                    end = last;
+                }
+                if (t >= end) {
+                    if (allEnded) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                for (; t < end; t++) {
+                    writer.write(Long.toString(t));
+                    for (Lane lane : lanes) {
+                        long n = t - lane.offset;
+                        boolean present = n >= 0 && n < lane.written.get();
+                        for (int k = 0; k < lane.nChannels; k++) {
+                            writer.write(',');
+                            if (present) {
+                                writer.write(Integer.toString(lane.get(n, k)));
+                            }
+                        }
+                        if (present) {
+                            lane.read.lazySet(n + 1);
+                        }
+                    }
+                    writer.newLine();
+                }
+            }
+        } catch (Throwable ex) {
+            error = ex;
+            for (Lane lane : lanes) {
+                lane.ended = true;
+                lane.read.set(Long.MAX_VALUE / 2);
+            }
+        }
+    }
+
+    /// Samples of one device waiting to be merged.
+    private static class Lane implements FrameSink {
+        final String name;
+        final int[] channels;
+        final int nChannels;
+        final long offset;
+        final short[] samples;
+        final AtomicLong written = new AtomicLong();
+        final AtomicLong read = new AtomicLong();
+        volatile boolean ended = false;
+
+        Lane(String name, int[] channels, long offset) {
+            this.name = name;
+            this.channels = channels.clone();
+            this.nChannels = channels.length;
+            this.offset = offset;
+            this.samples = new short[LANE_FRAMES * nChannels];
+        }
+
+        int get(long frame, int channel) {
+            return samples[(int) (frame & (LANE_FRAMES - 1)) * nChannels + channel];
+        }
+
+        @Override
+        public void onBlock(FrameBlock block) {
+            long w = written.get();
+            for (int i = 0; i < block.size(); i++, w++) {
+                while (w - read.get() >= LANE_FRAMES) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+                int base = (int) (w & (LANE_FRAMES - 1)) * nChannels;
+                for (int k = 0; k < nChannels; k++) {
+                    samples[base + k] = block.analog[k][i];
+                }
+                written.lazySet(w + 1);
+            }
+        }
+
+        @Override
+        public void onStop(Throwable error) {
+            ended = true;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ceu.biolab;
+
+import java.util.Arrays;
+
+/// Level-of-detail summary of one signal for zooming in and out of a whole session.
+/// Level 0 holds the samples themselves and each level above holds the min and max of pairs of buckets of the
+/// level below, so level l has one bucket per 2^l samples. The pyramid is built as samples arrive (amortised
+/// O(1) per sample) and any span of the signal can be reduced to one min/max per pixel by reading the level
+/// whose buckets are just under a pixel wide, whatever the length of the session.
+///
+/// Every level is a ring of the same capacity: level 0 keeps the last capacity samples, level l the last
+/// capacity * 2^l. Recent data is thus available at full detail and older data at a coarser one, and memory
+/// only grows with the logarithm of the session length.
+public class MinMaxPyramid {
+
+    /// Default number of buckets kept per level (65 s of samples at 1000 Hz on level 0)
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int MAX_LEVELS = 48;
+
+    private final int capacity;
+    private final short[][] min = new short[MAX_LEVELS][];
+    private final short[][] max = new short[MAX_LEVELS][];
+    /// Number of complete buckets ever written on each level
+    private final long[] completed = new long[MAX_LEVELS];
+    /// Min and max of the even bucket waiting for its odd sibling, per parent level
+    private final int[] pendingMin = new int[MAX_LEVELS];
+    private final int[] pendingMax = new int[MAX_LEVELS];
+    private int levels = 0;
+
+    public MinMaxPyramid() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /// \param[in] capacity Buckets kept per level, a power of 2
+    public MinMaxPyramid(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+        this.capacity = capacity;
+    }
+
+    /// Number of samples added.
+    public long size() {
+        return completed[0];
+    }
+
+    /// Number of levels built so far.
+    public int levels() {
+        return levels;
+    }
+
+    public void clear() {
+        Arrays.fill(completed, 0);
+    }
+
+    public void add(int value) {
+        put(0, completed[0], value, value);
+    }
+
+    private void put(int level, long bucket, int lo, int hi) {
+        if (level == levels) {
+            min[level] = new short[capacity];
+            max[level] = level == 0 ? min[0] : new short[capacity];
+            levels++;
+        }
+        int slot = (int) (bucket & (capacity - 1));
+        min[level][slot] = (short) lo;
+        max[level][slot] = (short) hi;
+        completed[level] = bucket + 1;
+        if (level + 1 == MAX_LEVELS) {
+            return;
+        }
+        if ((bucket & 1) == 0) {
+            pendingMin[level + 1] = lo;
+            pendingMax[level + 1] = hi;
+        } else {
+            put(level + 1, bucket >> 1, Math.min(lo, pendingMin[level + 1]), Math.max(hi, pendingMax[level + 1]));
+        }
+    }
+
+    /// First sample still summarised by the given level.
+    public long oldest(int level) {
+        if (level >= levels) {
+            return 0;
+        }
+        return Math.max(0, completed[level] - capacity) << level;
+    }
+
+    /// Finest level at which buckets are at most samplesPerPixel wide and that still reaches back to from.
+    public int levelFor(double samplesPerPixel, long from) {
+        int level = 0;
+        while (level + 1 < levels && (1L << (level + 1)) <= samplesPerPixel) {
+            level++;
+        }
+        while (level + 1 < levels && oldest(level) > from) {
+            level++;
+        }
+        return level;
+    }
+
+    /// Min and max of the samples from (inclusive) to to (exclusive), read from the buckets of the given
+    /// level that overlap the range (so the extremes may include a few samples around it), plus the
+    /// incomplete buckets of the finer levels at the end of the signal.
+    /// \param[out] out out[0] receives the min and out[1] the max
+    /// \return false if no sample of the range is available
+    public boolean minMax(long from, long to, int level, int[] out) {
+        if (levels == 0 || to <= from) {
+            return false;
+        }
+        level = Math.min(level, levels - 1);
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        long first = Math.max(from >> level, completed[level] - capacity);
+        long last = Math.min((to - 1) >> level, completed[level] - 1);
+        for (long b = Math.max(0, first); b <= last; b++) {
+            int slot = (int) (b & (capacity - 1));
+            lo = Math.min(lo, min[level][slot]);
+            hi = Math.max(hi, max[level][slot]);
+        }
+        // samples after the last complete bucket of the level: at most one bucket per finer level
+        long tail = completed[level] << level;
+        if (to > tail) {
+            for (int l = level - 1; l >= 0; l--) {
+                for (long b = completed[l + 1] << 1; b < completed[l]; b++) {
+                    long start = b << l;
+                    long end = (b + 1) << l;
+                    if (end > from && start < to) {
+                        int slot = (int) (b & (capacity - 1));
+                        lo = Math.min(lo, min[l][slot]);
+                        hi = Math.max(hi, max[l][slot]);
+                    }
+                }
+            }
+        }
+        if (lo > hi) {
+            return false;
+        }
+        out[0] = lo;
+        out[1] = hi;
+        return true;
+    }
+}
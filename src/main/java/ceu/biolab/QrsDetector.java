@@ -0,0 +1,257 @@
+package ceu.biolab;
+
+/// Streaming QRS detector after Pan and Tompkins (IEEE Trans. Biomed. Eng. 32(3), 1985).
+/// The ECG goes through a 5-15 Hz band-pass, a five-point derivative, squaring and a 150 ms moving window
+/// integration; peaks of the integrated signal are classified as QRS complexes or noise against two adaptive
+/// thresholds, with the original T-wave check (a peak 200-360 ms after a beat with less than half its slope
+/// is a T wave) and search-back (if no beat is found within 1.66 average RR intervals, the largest noise peak
+/// above half the threshold is taken as one). The R peak is located at the extreme of the band-passed signal
+/// under the integration window of the detected peak, then moved back over the delay of the band-pass to the
+/// extreme of the ECG itself.
+///
+/// Samples are consumed as they arrive, in blocks of any size. All the state is a few rings of fixed length
+/// set by the sampling rate, so the cost is a few tens of operations per sample and nothing is allocated.
+/// Beats are reported a little after the R peak (when the integrated signal has fallen to half of its peak,
+/// typically 100-200 ms later), with the sample index of the peak. The first 2.5 s of signal are used to let
+/// the filters settle and to learn the initial thresholds, and no beat is reported in them.
+public class QrsDetector {
+
+    /// Receives the beats, on the thread calling process().
+    public interface Listener {
+        /// \param[in] sample Index of the R peak since the first sample processed
+        /// \param[in] bpm Instantaneous heart rate from the last RR interval (NaN for the first beat)
+        /// \param[in] averageBpm Heart rate averaged over the last RR_AVERAGE intervals (NaN for the first beat)
+        void onBeat(long sample, double bpm, double averageBpm);
+    }
+
+    /// Number of RR intervals averaged for the heart rate and the search-back limit
+    public static final int RR_AVERAGE = 8;
+
+    private static final double WINDOW_SECONDS = 0.150;
+    private static final double REFRACTORY_SECONDS = 0.200;
+    private static final double T_WAVE_SECONDS = 0.360;
+    /// Start-up transient of the filters, ignored
+    private static final double SETTLE_SECONDS = 0.5;
+    /// Signal used to initialise the thresholds, after the start-up transient
+    private static final double LEARNING_SECONDS = 2;
+    private static final double SEARCH_BACK_RR = 1.66;
+    /// How far before the band-passed extreme the R peak of the ECG is searched (delay of the band-pass)
+    private static final double REFINE_SECONDS = 0.080;
+
+    private final int samplingRate;
+    private final Listener listener;
+    private final FilterChain band;
+
+    /// Band-passed samples for the derivative (spacing d) and for locating the R peak, and the ECG itself
+    private final int d;
+    private final double[] bandRing;
+    private final double[] rawRing;
+    private final int refine;
+    /// Squared derivative under the integration window, and its running sum
+    private final double[] window;
+    private int windowPos = 0;
+    private double windowSum = 0;
+
+    private final long refractory;
+    private final long tWave;
+    private final long settle;
+    private final long learningEnd;
+    private long n = 0;
+
+    private double learnMax = 0;
+    private double learnSum = 0;
+    private double spki = 0;
+    private double npki = 0;
+
+    // peak of the integrated signal being followed
+    private double candidate = 0;
+    private long candidateAt = 0;
+    private double candidateSlope = 0;
+    private double slope = 0;
+
+    // largest noise peak above the lower threshold since the last beat, for search-back
+    private double backPeak = 0;
+    private long backAt = 0;
+    private long backR = 0;
+    private double backSlope = 0;
+
+    private long lastPeakAt = -1;
+    private double lastSlope = 0;
+    private long lastBeat = -1;
+    private final long[] rr = new long[RR_AVERAGE];
+    private int rrCount = 0;
+    private long rrSum = 0;
+
+    private volatile long beats = 0;
+    private volatile double heartRate = Double.NaN;
+
+    /// \param[in] samplingRate Sampling rate in Hz, at least 100
+    /// \param[in] listener Receiver of the beats, or null to only use the getters
+    public QrsDetector(int samplingRate, Listener listener) {
+        if (samplingRate < 100) {
+            throw new IllegalArgumentException("QRS detection needs at least 100 Hz");
+        }
+        this.samplingRate = samplingRate;
+        this.listener = listener;
+        this.band = new FilterChain(1, Biquad.highPass(samplingRate, 5, Biquad.BUTTERWORTH_Q),
+                Biquad.lowPass(samplingRate, 15, Biquad.BUTTERWORTH_Q));
+        this.d = Math.max(1, samplingRate / 200);
+        int w = (int) Math.round(WINDOW_SECONDS * samplingRate);
+        this.window = new double[w];
+        this.refine = (int) Math.round(REFINE_SECONDS * samplingRate);
+        // a peak is decided at most one window after it, and its R peak lies up to a window, 2d and the
+        // band-pass delay before it
+        this.bandRing = new double[2 * w + 4 * d + refine + 2];
+        this.rawRing = new double[bandRing.length];
+        this.refractory = Math.round(REFRACTORY_SECONDS * samplingRate);
+        this.tWave = Math.round(T_WAVE_SECONDS * samplingRate);
+        this.settle = Math.round(SETTLE_SECONDS * samplingRate);
+        this.learningEnd = settle + Math.round(LEARNING_SECONDS * samplingRate);
+    }
+
+    /// Number of beats detected so far.
+    public long getBeats() {
+        return beats;
+    }
+
+    /// Heart rate averaged over the last RR_AVERAGE intervals, in beats per minute (NaN before two beats).
+    public double getHeartRate() {
+        return heartRate;
+    }
+
+    /// Feeds the next samples of the ECG.
+    public void process(short[] samples, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            next(samples[i]);
+        }
+    }
+
+    private double band(long k) {
+        return k < 0 ? 0 : bandRing[(int) (k % bandRing.length)];
+    }
+
+    private void next(double x) {
+        double bp = band.filter(0, x);
+        bandRing[(int) (n % bandRing.length)] = bp;
+        rawRing[(int) (n % rawRing.length)] = x;
+        double derivative = (2 * bp + band(n - d) - band(n - 3 * d) - 2 * band(n - 4 * d)) / 8;
+        double squared = derivative * derivative;
+        windowSum += squared - window[windowPos];
+        window[windowPos++] = squared;
+        if (windowPos == window.length) {
+            // recomputed once per window so that rounding errors do not accumulate
+            windowPos = 0;
+            windowSum = 0;
+            for (double v : window) {
+                windowSum += v;
+            }
+        }
+        double integrated = windowSum / window.length;
+        slope = Math.max(slope, Math.abs(derivative));
+
+        if (n < learningEnd) {
+            if (n >= settle) {
+                learnMax = Math.max(learnMax, integrated);
+                learnSum += integrated;
+            }
+            if (n == learningEnd - 1) {
+                spki = learnMax / 3;
+                npki = learnSum / (learningEnd - settle) / 2;
+            }
+            slope = 0;
+            n++;
+            return;
+        }
+
+        if (integrated > candidate) {
+            candidate = integrated;
+            candidateAt = n;
+            candidateSlope = slope;
+        } else if (integrated < candidate / 2 || n - candidateAt > window.length) {
+            peak(candidate, candidateAt, candidateSlope);
+            candidate = 0;
+            slope = 0;
+        }
+
+        if (backPeak > 0 && rrCount > 0 && n - lastPeakAt > SEARCH_BACK_RR * rrSum / rrCount) {
+            spki = 0.25 * backPeak + 0.75 * spki;
+            beat(backAt, backR, backSlope);
+        }
+        n++;
+    }
+
+    /// Classifies a peak of the integrated signal.
+    private void peak(double value, long at, double peakSlope) {
+        double threshold = npki + 0.25 * (spki - npki);
+        long since = lastPeakAt < 0 ? Long.MAX_VALUE : at - lastPeakAt;
+        if (since >= refractory && value > threshold
+                && (since >= tWave || peakSlope >= lastSlope / 2)) {
+            spki = 0.125 * value + 0.875 * spki;
+            beat(at, locateR(at), peakSlope);
+            return;
+        }
+        npki = 0.125 * value + 0.875 * npki;
+        if (since >= refractory && value > threshold / 2 && value > backPeak) {
+            backPeak = value;
+            backAt = at;
+            backR = locateR(at);
+            backSlope = peakSlope;
+        }
+    }
+
+    /// Sample of the R peak of the integrated signal peak at a given sample: the largest band-passed deflection
+    /// under its integration window, then the largest deflection of the ECG (from its mean) up to the
+    /// band-pass delay before it.
+    private long locateR(long at) {
+        long bandPeak = at;
+        double bestValue = -1;
+        for (long k = Math.max(0, at - window.length - 2L * d); k <= at; k++) {
+            double v = Math.abs(band(k));
+            if (v > bestValue) {
+                bestValue = v;
+                bandPeak = k;
+            }
+        }
+        long from = Math.max(0, bandPeak - refine);
+        double mean = 0;
+        for (long k = from; k <= bandPeak; k++) {
+            mean += rawRing[(int) (k % rawRing.length)];
+        }
+        mean /= bandPeak - from + 1;
+        long best = bandPeak;
+        bestValue = -1;
+        for (long k = from; k <= bandPeak; k++) {
+            double v = Math.abs(rawRing[(int) (k % rawRing.length)] - mean);
+            if (v > bestValue) {
+                bestValue = v;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    private void beat(long at, long r, double peakSlope) {
+        lastPeakAt = at;
+        lastSlope = peakSlope;
+        backPeak = 0;
+        double bpm = Double.NaN;
+        if (lastBeat >= 0) {
+            long interval = r - lastBeat;
+            int slot = (int) ((beats - 1) % RR_AVERAGE);
+            if (rrCount == RR_AVERAGE) {
+                rrSum -= rr[slot];
+            } else {
+                rrCount++;
+            }
+            rr[slot] = interval;
+            rrSum += interval;
+            bpm = 60.0 * samplingRate / interval;
+            heartRate = 60.0 * samplingRate * rrCount / rrSum;
+        }
+        lastBeat = r;
+        beats++;
+        if (listener != null) {
+            listener.onBeat(r, bpm, heartRate);
+        }
+    }
+}
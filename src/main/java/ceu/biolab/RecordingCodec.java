@@ -0,0 +1,215 @@
+package ceu.biolab;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/// Encodes and decodes the payload of one recording chunk (see RecordingHeader for the encodings).
+///
+/// ENCODING_RICE stores the chunk channel by channel: the first sample raw (10 bits), then a 1-bit
+/// predictor choice (first or second order) and a 4-bit Rice parameter, then the zigzag-coded residual of every
+/// following sample as a Rice code. A quotient of ESCAPE or more is written as ESCAPE ones followed by the raw
+/// residual, which bounds the size of a chunk. The digital nibbles follow as one bit per frame, set when
+/// the state changed, followed by the new state. Chunks do not depend on each other.
+///
+/// Instances keep the bit accumulator and are meant to be reused by one writer or reader.
+class RecordingCodec {
+
+    /// Longest Rice quotient written in unary before falling back to the raw residual
+    private static final int ESCAPE = 24;
+
+    /// Bits of a raw zigzag residual: second-order residuals of 10-bit samples lie within -2046...2046, whose
+    /// zigzag codes are below 4096
+    private static final int RAW_BITS = 12;
+
+    private final int encoding;
+    private final int nChannels;
+    private final int chunkFrames;
+    private final int frameBits;
+
+    private byte[] data;
+    private int pos;
+    private long bits;
+    private int nBits;
+
+    RecordingCodec(RecordingHeader header) {
+        this.encoding = header.getEncoding();
+        this.nChannels = header.getChannels();
+        this.chunkFrames = header.getChunkFrames();
+        this.frameBits = header.frameBits();
+    }
+
+    /// Largest payload a chunk can take; every payload of ENCODING_PACKED has exactly this size.
+    int maxPayloadBytes() {
+        long maxBits;
+        if (encoding == RecordingHeader.ENCODING_PACKED) {
+            maxBits = (long) chunkFrames * frameBits;
+        } else {
+            maxBits = nChannels * (10 + 1 + 4 + (long) chunkFrames * (ESCAPE + RAW_BITS)) + chunkFrames * 5L;
+        }
+        return (int) ((maxBits + 7) / 8);
+    }
+
+    /// Encodes the frames of a block into out, which must hold maxPayloadBytes().
+    /// \return Length of the payload
+    int encode(FrameBlock block, byte[] out) {
+        data = out;
+        pos = 0;
+        bits = 0;
+        nBits = 0;
+        int n = block.size;
+        if (encoding == RecordingHeader.ENCODING_PACKED) {
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < nChannels; k++) {
+                    put(block.analog[k][i] & 0x3FF, 10);
+                }
+                put(block.digital[i] & 0x0F, 4);
+            }
+            flushBits();
+            Arrays.fill(out, pos, maxPayloadBytes(), (byte) 0);
+            return maxPayloadBytes();
+        }
+
+        for (int k = 0; k < nChannels; k++) {
+            encodeChannel(block.analog[k], n);
+        }
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            int d = block.digital[i] & 0x0F;
+            if (i > 0 && d == last) {
+                put(0, 1);
+            } else {
+                put(0x10 | d, 5);
+                last = d;
+            }
+        }
+        flushBits();
+        return pos;
+    }
+
+    private void encodeChannel(short[] x, int n) {
+        if (n == 0) {
+            return;
+        }
+        // pick the predictor and the Rice parameter from the mean residual magnitude
+        long sum1 = 0, sum2 = 0;
+        for (int i = 1; i < n; i++) {
+            int r1 = x[i] - x[i - 1];
+            sum1 += Math.abs(r1);
+            if (i > 1) {
+                sum2 += Math.abs(r1 - (x[i - 1] - x[i - 2]));
+            } else {
+                sum2 += Math.abs(r1);
+            }
+        }
+        int order = sum2 < sum1 ? 2 : 1;
+        long mean = (order == 2 ? sum2 : sum1) / Math.max(1, n - 1);
+        int k = Math.min(15, 64 - Long.numberOfLeadingZeros(mean));
+
+        put(x[0] & 0x3FF, 10);
+        put(order - 1, 1);
+        put(k, 4);
+        for (int i = 1; i < n; i++) {
+            int prediction = order == 2 && i > 1 ? 2 * x[i - 1] - x[i - 2] : x[i - 1];
+            int r = x[i] - prediction;
+            int z = (r << 1) ^ (r >> 31);
+            int q = z >>> k;
+            if (q < ESCAPE) {
+                putOnes(q);
+                put(0, 1);
+                if (k > 0) {
+                    put(z & ((1 << k) - 1), k);
+                }
+            } else {
+                putOnes(ESCAPE);
+                put(z, RAW_BITS);
+            }
+        }
+    }
+
+    /// Decodes a payload into dest, which must hold chunkFrames frames.
+    void decode(byte[] in, int length, int frames, FrameBlock dest) throws IOException {
+        data = in;
+        pos = 0;
+        bits = 0;
+        nBits = 0;
+        try {
+            if (encoding == RecordingHeader.ENCODING_PACKED) {
+                for (int i = 0; i < frames; i++) {
+                    for (int k = 0; k < nChannels; k++) {
+                        dest.analog[k][i] = (short) get(10);
+                    }
+                    dest.digital[i] = (byte) get(4);
+                }
+            } else {
+                for (int k = 0; k < nChannels; k++) {
+                    decodeChannel(dest.analog[k], frames);
+                }
+                int last = 0;
+                for (int i = 0; i < frames; i++) {
+                    if (get(1) == 1) {
+                        last = get(4);
+                    }
+                    dest.digital[i] = (byte) last;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Chunk payload is truncated");
+        }
+        if (pos > length) {
+            throw new IOException("Chunk payload is truncated");
+        }
+        dest.size = frames;
+    }
+
+    private void decodeChannel(short[] x, int n) {
+        if (n == 0) {
+            return;
+        }
+        x[0] = (short) get(10);
+        int order = get(1) + 1;
+        int k = get(4);
+        for (int i = 1; i < n; i++) {
+            int q = 0;
+            while (q < ESCAPE && get(1) == 1) {
+                q++;
+            }
+            int z = q < ESCAPE ? q << k | (k > 0 ? get(k) : 0) : get(RAW_BITS);
+            int r = (z >>> 1) ^ -(z & 1);
+            int prediction = order == 2 && i > 1 ? 2 * x[i - 1] - x[i - 2] : x[i - 1];
+            x[i] = (short) (prediction + r);
+        }
+    }
+
+    private void put(int value, int n) {
+        bits = bits << n | value;
+        nBits += n;
+        while (nBits >= 8) {
+            nBits -= 8;
+            data[pos++] = (byte) (bits >>> nBits);
+        }
+    }
+
+    private void putOnes(int n) {
+        while (n > 16) {
+            put(0xFFFF, 16);
+            n -= 16;
+        }
+        put((1 << n) - 1, n);
+    }
+
+    private void flushBits() {
+        if (nBits > 0) {
+            data[pos++] = (byte) (bits << (8 - nBits));
+            nBits = 0;
+        }
+    }
+
+    private int get(int n) {
+        while (nBits < n) {
+            bits = bits << 8 | (data[pos++] & 0xFF);
+            nBits += 8;
+        }
+        nBits -= n;
+        return (int) (bits >>> nBits) & ((1 << n) - 1);
+    }
+}
@@ -0,0 +1,150 @@
+package ceu.biolab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Saves and exports finished recordings without loading them into memory.
+/// Files are moved when possible (a rename on the same filesystem), otherwise copied by the kernel through
+/// FileChannel.transferTo(); exports to other formats stream the binary recording one chunk at a time.
+/// All the operations block, and are meant to run off the event dispatch thread.
+public class RecordingExporter {
+
+    /// Receives the progress of a long operation, from the thread running it.
+    public interface Progress {
+        void update(long done, long total);
+    }
+
+    /// Bytes handed to transferTo() at a time, between two progress updates
+    private static final long TRANSFER_BYTES = 8 << 20;
+
+    /// Moves a file to its destination, replacing it if it exists.
+    /// The move is an atomic rename when both are on the same filesystem; otherwise the file is copied
+    /// and the source deleted once the copy is complete.
+    public static void move(Path source, Path dest, Progress progress) throws IOException {
+        try {
+            Files.move(source, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.size(dest);
+            progress.update(size, size);
+            return;
+        } catch (AtomicMoveNotSupportedException ex) {
+            // another filesystem
+        }
+        copy(source, dest, progress);
+        Files.delete(source);
+    }
+
+    /// Copies a file to its destination, replacing it if it exists, without going through user-space buffers.
+    public static void copy(Path source, Path dest, Progress progress) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long done = 0;
+            progress.update(0, size);
+            while (done < size) {
+                done += in.transferTo(done, Math.min(TRANSFER_BYTES, size - done), out);
+                progress.update(done, size);
+            }
+        }
+    }
+
+    /// Joins the segments of a long recording (see SegmentedRecordingWriter) into one binary recording with
+    /// the header of the first segment. The segments are streamed one chunk at a time, and every chunk is
+    /// checked against its CRC on the way.
+    /// \exception IOException if a segment is corrupted or belongs to a different recording
+    public static void stitch(List<File> segments, File dest, Progress progress) throws IOException {
+        if (segments.isEmpty()) {
+            throw new IOException("No segments to stitch");
+        }
+        RecordingHeader header;
+        try (BinaryRecordingReader first = new BinaryRecordingReader(segments.get(0))) {
+            header = first.getHeader();
+        }
+        BinaryRecordingWriter writer = new BinaryRecordingWriter(dest, header);
+        try {
+            FrameBlock chunk = new FrameBlock(header.getChannels(), header.getChunkFrames());
+            for (int s = 0; s < segments.size(); s++) {
+                try (BinaryRecordingReader reader = new BinaryRecordingReader(segments.get(s))) {
+                    RecordingHeader h = reader.getHeader();
+                    if (h.getEncoding() != header.getEncoding() || h.getSamplingRate() != header.getSamplingRate()
+                            || h.getChannelMask() != header.getChannelMask()
+                            || h.getChunkFrames() != header.getChunkFrames()) {
+                        throw new IOException(segments.get(s).getName() + " does not belong to the recording");
+                    }
+                    int nChunks = reader.getChunkCount();
+                    for (int c = 0; c < nChunks; c++) {
+                        reader.readChunk(c, chunk);
+                        writer.onBlock(chunk);
+                        // segments weigh the same: only the last one is shorter
+                        progress.update(s * 1000L + (c + 1) * 1000L / nChunks, segments.size() * 1000L);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            writer.onStop(ex);
+            throw ex;
+        }
+        writer.onStop(null);
+    }
+
+    /// Exports a binary recording as one CSV file per analog channel, named after dest with the channel
+    /// appended (e.g. "rec.csv" gives "rec_A2.csv"). Each file has a line with the sampling rate, a
+    /// "sample,A<n>" header and one row per sample.
+    /// \return The files written
+    public static List<File> exportChannelCsv(File recording, File dest, Progress progress) throws IOException {
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(recording)) {
+            RecordingHeader header = reader.getHeader();
+            int nChannels = header.getChannels();
+            List<File> files = new ArrayList<>();
+            AsciiWriter[] writers = new AsciiWriter[nChannels];
+            try {
+                String base = dest.getName().replaceFirst("\\.csv$", "");
+                int k = 0;
+                for (int ch = 0; ch < 6; ch++) {
+                    if ((header.getChannelMask() & (1 << ch)) == 0) {
+                        continue;
+                    }
+                    File file = new File(dest.getParentFile(), base + "_A" + (ch + 1) + ".csv");
+                    files.add(file);
+                    writers[k] = new AsciiWriter(file);
+                    writers[k].putInt(header.getSamplingRate());
+                    writers[k].newLine();
+                    writers[k].put("sample,A" + (ch + 1));
+                    writers[k].newLine();
+                    k++;
+                }
+
+                FrameBlock chunk = new FrameBlock(nChannels, header.getChunkFrames());
+                int nChunks = reader.getChunkCount();
+                for (int c = 0; c < nChunks; c++) {
+                    long offset = reader.readChunk(c, chunk);
+                    for (k = 0; k < nChannels; k++) {
+                        short[] samples = chunk.analog(k);
+                        for (int i = 0; i < chunk.size(); i++) {
+                            writers[k].putLong(offset + i);
+                            writers[k].put(',');
+                            writers[k].putInt(samples[i]);
+                            writers[k].newLine();
+                        }
+                    }
+                    progress.update(c + 1, nChunks);
+                }
+            } finally {
+                for (AsciiWriter writer : writers) {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ceu.biolab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/// Metadata at the start of a binary recording (see BinaryRecordingWriter).
+///
+/// Layout (big-endian), followed by the chunks:
+/// offset | size | field
+/// ------ | ---- | -----
+///      0 |    4 | magic "BITR"
+///      4 |    2 | format version
+///      6 |    2 | chunk encoding (ENCODING_PACKED or ENCODING_RICE)
+///      8 |    4 | sampling rate (Hz)
+///     12 |    1 | analog channel mask (bit n set if An+1 was acquired)
+///     13 |    6 | device MAC address
+///     19 |    8 | start time (ms since the epoch)
+///     27 |    4 | frames per chunk
+///     31 |    4 | CRC32C of the previous 31 bytes
+///
+/// Every chunk starts with a CHUNK_HEADER_BYTES header: sample offset of its first frame (8 bytes),
+/// number of frames (4), payload length in bytes (4) and CRC32C of the payload (4).
+public class RecordingHeader {
+
+    public static final int MAGIC = 0x42495452;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 35;
+    public static final int CHUNK_HEADER_BYTES = 20;
+
+    /// Chunk payload with every frame bit-packed: 10 bits per analog channel, then the 4 digital bits.
+    /// All chunks have the same size, so chunk n is at HEADER_BYTES + n * chunk size.
+    public static final int ENCODING_PACKED = 0;
+
+    /// Lossless compression of every chunk on its own (see RecordingCodec). Chunks have variable sizes
+    /// and are located by walking their headers.
+    public static final int ENCODING_RICE = 1;
+
+    private final int encoding;
+    private final int samplingRate;
+    private final int channelMask;
+    private final String macAddress;
+    private final long startTimeMillis;
+    private final int chunkFrames;
+
+    /// \param[in] encoding Chunk encoding (ENCODING_PACKED or ENCODING_RICE)
+    /// \param[in] samplingRate Sampling rate in Hz
+    /// \param[in] channelMask Analog channels acquired (see channelMask())
+    /// \param[in] macAddress Device Bluetooth MAC address ("xx:xx:xx:xx:xx:xx")
+    /// \param[in] startTimeMillis Start of the recording, in ms since the epoch
+    /// \param[in] chunkFrames Number of frames per chunk
+    public RecordingHeader(int encoding, int samplingRate, int channelMask, String macAddress,
+                           long startTimeMillis, int chunkFrames) {
+        this.encoding = encoding;
+        this.samplingRate = samplingRate;
+        this.channelMask = channelMask;
+        this.macAddress = macAddress;
+        this.startTimeMillis = startTimeMillis;
+        this.chunkFrames = chunkFrames;
+    }
+
+    /// Channel mask for the channels passed to BITalino.start().
+    public static int channelMask(int[] channels) {
+        int mask = 0;
+        for (int ch : channels) {
+            mask |= 1 << ch;
+        }
+        return mask;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    public int getChannelMask() {
+        return channelMask;
+    }
+
+    /// Number of analog channels stored in each frame.
+    public int getChannels() {
+        return Integer.bitCount(channelMask);
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public int getChunkFrames() {
+        return chunkFrames;
+    }
+
+    /// Bits used by one bit-packed frame.
+    public int frameBits() {
+        return getChannels() * 10 + 4;
+    }
+
+    void write(ByteBuffer buf) {
+        int start = buf.position();
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.putShort((short) encoding);
+        buf.putInt(samplingRate);
+        buf.put((byte) channelMask);
+        String hex = macAddress.replace(":", "");
+        for (int i = 0; i < 6; i++) {
+            buf.put((byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16));
+        }
+        buf.putLong(startTimeMillis);
+        buf.putInt(chunkFrames);
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), buf.arrayOffset() + start, HEADER_BYTES - 4);
+        buf.putInt((int) crc.getValue());
+    }
+
+    static RecordingHeader read(ByteBuffer buf) throws IOException {
+        int start = buf.position();
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), buf.arrayOffset() + start, HEADER_BYTES - 4);
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not a BITalino recording");
+        }
+        int version = buf.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        int encoding = buf.getShort();
+        int samplingRate = buf.getInt();
+        int channelMask = buf.get() & 0x3F;
+        StringBuilder mac = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) {
+                mac.append(':');
+            }
+            mac.append(String.format("%02X", buf.get() & 0xFF));
+        }
+        long startTime = buf.getLong();
+        int chunkFrames = buf.getInt();
+        if (buf.getInt() != (int) crc.getValue()) {
+            throw new IOException("Recording header is corrupted");
+        }
+        return new RecordingHeader(encoding, samplingRate, channelMask, mac.toString(), startTime, chunkFrames);
+    }
+}
@@ -0,0 +1,8 @@
+package ceu.biolab;
+
+/// Notified by BITalino.read() every time the frame stream had to be resynchronised after a CRC failure.
+public interface ResyncListener {
+
+    /// \param[in] skippedBytes Number of bytes dropped until a frame passed the CRC check again
+    void resynchronised(int skippedBytes);
+}
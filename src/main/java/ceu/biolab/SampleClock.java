@@ -0,0 +1,125 @@
+package ceu.biolab;
+
+/// Timestamps of the samples of one device, derived from the sample counter instead of the host clock.
+/// Sample n was taken n sampling periods after the anchor (the System.nanoTime() of the start command),
+/// corrected by the drift of the device crystal against the host clock.
+///
+/// The drift is estimated from the arrival of the blocks: the offset between the arrival time of a sample and
+/// its nominal time is the link delay plus the accumulated drift. Bluetooth batching only ever adds delay, so
+/// the minimum offset of each window (the least delayed block) tracks the drift, and a running least squares
+/// fit of those minima gives its slope. Each observation costs O(1) and nothing is stored per block.
+public class SampleClock {
+
+    /// Default length of the windows whose minimum offset feeds the fit, in ns
+    public static final long DEFAULT_WINDOW_NANOS = 2_000_000_000L;
+
+    private final int samplingRate;
+    private final double periodNanos;
+    private final long windowNanos;
+    // written by the thread calling anchor() and observe() (the reader of the acquisition), read from any
+    // thread, e.g. the EDT for the status bar
+    private volatile long anchorNanos = 0;
+    private volatile boolean anchored = false;
+    private volatile long points = 0;
+    private volatile double drift = 0;
+
+    // minimum offset of the current window
+    private long windowEnd;
+    private long windowMin;
+    private long windowMinAt;
+
+    // running fit of the window minima (offset against nominal time, both in s)
+    private double meanX = 0;
+    private double meanY = 0;
+    private double sumXY = 0;
+    private double sumXX = 0;
+
+    public SampleClock(int samplingRate) {
+        this(samplingRate, DEFAULT_WINDOW_NANOS);
+    }
+
+    /// \param[in] samplingRate Nominal sampling rate of the device
+    /// \param[in] windowNanos Length of signal over which the least delayed block is kept for the fit
+    public SampleClock(int samplingRate, long windowNanos) {
+        this.samplingRate = samplingRate;
+        this.periodNanos = 1e9 / samplingRate;
+        this.windowNanos = windowNanos;
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    /// Sets the host time of sample 0 and restarts the drift estimate.
+    public void anchor(long nanos) {
+        anchorNanos = nanos;
+        anchored = true;
+        windowEnd = windowNanos;
+        windowMin = Long.MAX_VALUE;
+        points = 0;
+        meanX = 0;
+        meanY = 0;
+        sumXY = 0;
+        sumXX = 0;
+        drift = 0;
+    }
+
+    public boolean isAnchored() {
+        return anchored;
+    }
+
+    public long getAnchorNanos() {
+        return anchorNanos;
+    }
+
+    /// Accounts for the arrival of samples, typically once per block read.
+    /// \param[in] samples Number of samples acquired so far (lost frames included)
+    /// \param[in] nanos System.nanoTime() at which the last of them was received
+    public void observe(long samples, long nanos) {
+        long nominal = Math.round(samples * periodNanos);
+        long offset = nanos - anchorNanos - nominal;
+        if (offset < windowMin) {
+            windowMin = offset;
+            windowMinAt = nominal;
+        }
+        if (nominal >= windowEnd) {
+            fit(windowMinAt / 1e9, windowMin / 1e9);
+            windowEnd = nominal + windowNanos;
+            windowMin = Long.MAX_VALUE;
+        }
+    }
+
+    private void fit(double x, double y) {
+        long n = points + 1;
+        double dx = x - meanX;
+        meanX += dx / n;
+        meanY += (y - meanY) / n;
+        sumXY += dx * (y - meanY);
+        sumXX += dx * (x - meanX);
+        if (n >= 2 && sumXX > 0) {
+            drift = sumXY / sumXX;
+        }
+        points = n;
+    }
+
+    /// Estimated drift of the device clock, in parts per million (positive when the device samples slower
+    /// than its nominal rate, i.e. its samples arrive later and later).
+    public double getDriftPpm() {
+        return drift * 1e6;
+    }
+
+    /// Number of windows the drift estimate is based on (0 or 1: no estimate yet).
+    public long getWindows() {
+        return points;
+    }
+
+    /// Host time (System.nanoTime() base) at which the given sample was taken.
+    public long timeNanos(long sample) {
+        return anchorNanos + Math.round(sample * periodNanos * (1 + drift));
+    }
+
+    /// Time of the given sample since sample 0, in s.
+    public double seconds(long sample) {
+        return sample * periodNanos * (1 + drift) / 1e9;
+    }
+}
@@ -0,0 +1,131 @@
+package ceu.biolab;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Writes a long recording as a series of binary recordings (segments) of a fixed number of frames each.
+/// A new segment is started when the current one is full, so no file grows without bound, a crash only
+/// risks the segment being written, and finished segments can be copied away while the acquisition goes on.
+/// Each segment is a complete recording on its own whose header start time is that of its first frame;
+/// RecordingExporter.stitch() joins them back into a single recording.
+///
+/// Memory is bounded by one chunk whatever the length of the recording (see BinaryRecordingWriter).
+public class SegmentedRecordingWriter implements FrameSink {
+
+    private final File directory;
+    private final String prefix;
+    private final RecordingHeader header;
+    private final long segmentFrames;
+    private final List<File> segments = new ArrayList<>();
+
+    /// Holds the part of a block that goes to one segment when a block is split
+    private final FrameBlock part;
+
+    private BinaryRecordingWriter current = null;
+    private long currentFrames = 0;
+    private volatile long framesWritten = 0;
+
+    /// \param[in] directory Directory receiving the segments
+    /// \param[in] prefix Name of the segments, numbered from 1 (e.g. "rec" gives rec_0001.bin, rec_0002.bin...)
+    /// \param[in] header Header of the recording; the segments share everything but the start time
+    /// \param[in] segmentFrames Frames per segment, rounded up to a whole number of chunks
+    public SegmentedRecordingWriter(File directory, String prefix, RecordingHeader header, long segmentFrames) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.header = header;
+        int chunk = header.getChunkFrames();
+        this.segmentFrames = Math.max(1, (segmentFrames + chunk - 1) / chunk) * chunk;
+        this.part = new FrameBlock(header.getChannels(), chunk);
+    }
+
+    /// Segments created so far, in order (the last one may still be being written).
+    public List<File> getSegments() {
+        synchronized (segments) {
+            return new ArrayList<>(segments);
+        }
+    }
+
+    public long getSegmentFrames() {
+        return segmentFrames;
+    }
+
+    /// Number of frames received so far, across all the segments.
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    @Override
+    public void onBlock(FrameBlock block) throws IOException {
+        int i = 0;
+        while (i < block.size) {
+            if (current == null) {
+                openSegment();
+            }
+            int n = (int) Math.min(block.size - i, segmentFrames - currentFrames);
+            if (i == 0 && n == block.size) {
+                current.onBlock(block);
+            } else {
+                forward(block, i, n);
+            }
+            currentFrames += n;
+            framesWritten += n;
+            i += n;
+            if (currentFrames == segmentFrames) {
+                current.onStop(null);
+                current = null;
+            }
+        }
+    }
+
+    @Override
+    public void onStop(Throwable error) throws IOException {
+        if (current != null) {
+            current.onStop(error);
+            current = null;
+        }
+    }
+
+    /// Deletes the segments, and the directory if nothing else is left in it, once they have been exported or
+    /// are discarded. Must only be called after onStop().
+    /// \return true if every segment was deleted
+    public boolean delete() {
+        boolean deleted = true;
+        synchronized (segments) {
+            for (File segment : segments) {
+                deleted &= !segment.exists() || segment.delete();
+            }
+            segments.clear();
+        }
+        directory.delete();
+        return deleted;
+    }
+
+    /// Passes part of a block (split across two segments) to the current segment.
+    private void forward(FrameBlock block, int from, int count) throws IOException {
+        for (int done = 0; done < count; done += part.size) {
+            int m = Math.min(count - done, part.capacity());
+            for (int k = 0; k < part.channels(); k++) {
+                System.arraycopy(block.analog[k], from + done, part.analog[k], 0, m);
+            }
+            System.arraycopy(block.digital, from + done, part.digital, 0, m);
+            System.arraycopy(block.seq, from + done, part.seq, 0, m);
+            part.size = m;
+            current.onBlock(part);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        long startMillis = header.getStartTimeMillis() + framesWritten * 1000 / header.getSamplingRate();
+        RecordingHeader segmentHeader = new RecordingHeader(header.getEncoding(), header.getSamplingRate(),
+                header.getChannelMask(), header.getMacAddress(), startMillis, header.getChunkFrames());
+        File file;
+        synchronized (segments) {
+            file = new File(directory, String.format("%s_%04d.bin", prefix, segments.size() + 1));
+            segments.add(file);
+        }
+        current = new BinaryRecordingWriter(file, segmentHeader);
+        currentFrames = 0;
+    }
+}
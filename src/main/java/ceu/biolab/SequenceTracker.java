@@ -0,0 +1,65 @@
+package ceu.biolab;
+
+/// Streaming check of the 4-bit frame sequence numbers (Frame.seq), across any number of reads.
+/// A jump of n in the sequence means n-1 frames were lost. The counter wraps every 16 frames, so a
+/// burst of 16 or more lost frames can only be measured when the caller knows a lower bound for it
+/// (e.g. whole blocks dropped by a slow consumer); otherwise it is counted modulo 16.
+public class SequenceTracker {
+
+    private int last = -1;
+    private long frames = 0;
+    private long lostFrames = 0;
+    private long gapEvents = 0;
+
+    /// Accounts for the next frame received.
+    /// \return Number of frames lost right before this one
+    public long next(int seq) {
+        return next(seq, 0);
+    }
+
+    /// Accounts for the next frame received, knowing at least atLeast frames were lost before it.
+    /// \return Number of frames lost right before this one: the smallest value not below atLeast that matches the jump in the sequence
+    public long next(int seq, long atLeast) {
+        long missing = 0;
+        if (last >= 0) {
+            int jump = (seq - last - 1) & 0x0F;
+            missing = atLeast + ((jump - atLeast) & 0x0F);
+        }
+        last = seq & 0x0F;
+        frames++;
+        if (missing > 0) {
+            lostFrames += missing;
+            gapEvents++;
+        }
+        return missing;
+    }
+
+    /// Forgets the last sequence number and clears the counters, e.g. when a new acquisition starts.
+    public void reset() {
+        last = -1;
+        frames = 0;
+        lostFrames = 0;
+        gapEvents = 0;
+    }
+
+    /// Number of frames received.
+    public long getFrames() {
+        return frames;
+    }
+
+    /// Number of frames detected as lost.
+    public long getLostFrames() {
+        return lostFrames;
+    }
+
+    /// Number of gaps (runs of consecutive lost frames) detected.
+    public long getGapEvents() {
+        return gapEvents;
+    }
+
+    /// Fraction (0...1) of the frames sent by the device that were lost.
+    public double getLossRatio() {
+        long total = frames + lostFrames;
+        return total == 0 ? 0 : lostFrames / (double) total;
+    }
+}
@@ -0,0 +1,371 @@
+package ceu.biolab;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+/// Whole-session view of several analog channels and the digital lines, one lane per trace.
+/// Every trace is summarised by a MinMaxPyramid as the samples arrive, and a repaint reads one min/max pair
+/// per pixel from the level matching the zoom, so drawing costs the same for a few beats or a whole session.
+///
+/// The mouse wheel zooms around the pointer, dragging pans, and a double click (or reaching the end of the
+/// session while panning) goes back to following the live signal. A right click opens a menu to show or hide
+/// each lane.
+///
+/// Must be used from the event dispatch thread.
+public class SessionPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DIGITAL_PORTS = 4;
+    private static final int DIGITAL_LANE_HEIGHT = 18;
+    private static final int LANE_GAP = 6;
+    private static final double ZOOM_STEP = 1.25;
+    /// Shortest span shown, in samples
+    private static final long MIN_SPAN = 16;
+
+    private static final Color[] TRACE_COLORS = {
+            new Color(198, 0, 0), new Color(0, 90, 200), new Color(0, 140, 60),
+            new Color(170, 0, 170), new Color(200, 120, 0), new Color(60, 60, 60)
+    };
+
+    private String[] names = new String[0];
+    private boolean[] visible = new boolean[0];
+    private transient MinMaxPyramid[] analog = new MinMaxPyramid[0];
+    private final transient MinMaxPyramid[] digital = new MinMaxPyramid[DIGITAL_PORTS];
+    private boolean digitalVisible = true;
+    private int samplingRate = 1000;
+    private long total = 0;
+
+    /// View: span samples ending at viewEnd, or at the last sample while following
+    private boolean follow = true;
+    private long viewEnd = 0;
+    private long span = 5000;
+
+    private final int[] range = new int[2];
+    private int[] pixelMin = new int[0];
+    private int[] pixelMax = new int[0];
+    private boolean[] pixelSet = new boolean[0];
+
+    public SessionPanel() {
+        setPreferredSize(new Dimension(600, 300));
+        setBackground(Color.WHITE);
+        for (int p = 0; p < DIGITAL_PORTS; p++) {
+            digital[p] = new MinMaxPyramid();
+        }
+
+        MouseAdapter mouse = new MouseAdapter() {
+            private int dragX;
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()), e.getX() / (double) Math.max(1, getWidth()));
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                showLaneMenu(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showLaneMenu(e);
+            }
+
+            /// The popup trigger is the press on some platforms and the release on others.
+            private void showLaneMenu(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    createLaneMenu().show(SessionPanel.this, e.getX(), e.getY());
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                pan(Math.round((dragX - e.getX()) * span / (double) Math.max(1, getWidth())));
+                dragX = e.getX();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    followLive();
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /// Starts a new session with the given analog channels (e.g. "A1", "A2"), all visible.
+    public void setChannels(String[] channelNames, int samplingRate) {
+        this.names = channelNames.clone();
+        this.samplingRate = samplingRate;
+        this.visible = new boolean[names.length];
+        this.analog = new MinMaxPyramid[names.length];
+        for (int k = 0; k < names.length; k++) {
+            visible[k] = true;
+            analog[k] = new MinMaxPyramid();
+        }
+        span = 5L * samplingRate;
+        clear();
+    }
+
+    public void setChannelVisible(int channel, boolean show) {
+        visible[channel] = show;
+        repaint();
+    }
+
+    public boolean isChannelVisible(int channel) {
+        return visible[channel];
+    }
+
+    public void setDigitalVisible(boolean show) {
+        digitalVisible = show;
+        repaint();
+    }
+
+    public boolean isDigitalVisible() {
+        return digitalVisible;
+    }
+
+    /// Menu with one check box per lane (the analog channels and the digital lines) showing or hiding it.
+    public JPopupMenu createLaneMenu() {
+        JPopupMenu menu = new JPopupMenu();
+        for (int k = 0; k < names.length; k++) {
+            int channel = k;
+            JCheckBoxMenuItem item = new JCheckBoxMenuItem(names[k], visible[k]);
+            item.addActionListener(e -> setChannelVisible(channel, item.isSelected()));
+            menu.add(item);
+        }
+        JCheckBoxMenuItem digitalItem = new JCheckBoxMenuItem("Digital", digitalVisible);
+        digitalItem.addActionListener(e -> setDigitalVisible(digitalItem.isSelected()));
+        menu.add(digitalItem);
+        return menu;
+    }
+
+    public void clear() {
+        for (MinMaxPyramid p : analog) {
+            p.clear();
+        }
+        for (MinMaxPyramid p : digital) {
+            p.clear();
+        }
+        total = 0;
+        follow = true;
+        repaint();
+    }
+
+    /// Number of samples shown across the panel.
+    public long getSpan() {
+        return span;
+    }
+
+    /// Last sample shown at the right edge (exclusive).
+    public long getViewEnd() {
+        return follow ? total : viewEnd;
+    }
+
+    public boolean isFollowing() {
+        return follow;
+    }
+
+    /// Adds frames to the session (see DisplayBatcher.Listener). Frames the display skipped
+    /// (firstSample beyond the current end) are filled with the previous values.
+    public void addSamples(short[][] samples, byte[] digitalStates, int count, long firstSample) {
+        while (total < firstSample && total > 0) {
+            for (MinMaxPyramid p : analog) {
+                p.add(lastValue(p));
+            }
+            for (MinMaxPyramid p : digital) {
+                p.add(lastValue(p));
+            }
+            total++;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int k = 0; k < analog.length; k++) {
+                analog[k].add(samples[k][i]);
+            }
+            for (int p = 0; p < DIGITAL_PORTS; p++) {
+                digital[p].add((digitalStates[i] >> (3 - p)) & 0x01);
+            }
+        }
+        total += count;
+        if (follow) {
+            repaint();
+        }
+    }
+
+    private int lastValue(MinMaxPyramid p) {
+        return p.minMax(p.size() - 1, p.size(), 0, range) ? range[0] : 0;
+    }
+
+    /// Zooms by a factor (> 1 shows more samples) keeping the sample under anchor (0...1 across the width) in place.
+    public void zoom(double factor, double anchor) {
+        long end = getViewEnd();
+        long newSpan = Math.max(MIN_SPAN, Math.min(Math.max(total, MIN_SPAN), Math.round(span * factor)));
+        double anchorSample = end - span * (1 - anchor);
+        long newEnd = Math.round(anchorSample + newSpan * (1 - anchor));
+        span = newSpan;
+        moveTo(newEnd);
+    }
+
+    /// Moves the view by a number of samples (positive towards the end of the session).
+    public void pan(long samples) {
+        moveTo(getViewEnd() + samples);
+    }
+
+    public void followLive() {
+        follow = true;
+        repaint();
+    }
+
+    private void moveTo(long end) {
+        end = Math.max(Math.min(span, total), end);
+        if (end >= total) {
+            follow = true;
+        } else {
+            follow = false;
+            viewEnd = end;
+        }
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || total == 0) {
+            return;
+        }
+        if (pixelMin.length != w) {
+            pixelMin = new int[w];
+            pixelMax = new int[w];
+            pixelSet = new boolean[w];
+        }
+
+        int nAnalog = 0;
+        for (boolean v : visible) {
+            if (v) {
+                nAnalog++;
+            }
+        }
+        int digitalHeight = digitalVisible ? DIGITAL_PORTS * DIGITAL_LANE_HEIGHT : 0;
+        int laneHeight = nAnalog == 0 ? 0 : (h - digitalHeight - LANE_GAP * nAnalog) / nAnalog;
+
+        long end = getViewEnd();
+        long start = end - span;
+        Graphics2D g2 = (Graphics2D) g;
+        int y = 0;
+        for (int k = 0; k < analog.length; k++) {
+            if (!visible[k]) {
+                continue;
+            }
+            reduce(analog[k], start, w);
+            drawAnalogLane(g2, names[k], TRACE_COLORS[k % TRACE_COLORS.length], y, laneHeight, w);
+            y += laneHeight + LANE_GAP;
+        }
+        if (digitalVisible) {
+            for (int p = 0; p < DIGITAL_PORTS; p++) {
+                reduce(digital[p], start, w);
+                drawDigitalLane(g2, "D" + p, y, w);
+                y += DIGITAL_LANE_HEIGHT;
+            }
+        }
+
+        g2.setColor(Color.DARK_GRAY);
+        String label = String.format("%.1f s shown%s", span / (double) samplingRate, follow ? " (live)" : "");
+        g2.drawString(label, w - g2.getFontMetrics().stringWidth(label) - 6, h - 4);
+    }
+
+    /// Fills pixelMin/pixelMax with the extremes of the samples under each pixel.
+    private void reduce(MinMaxPyramid pyramid, long start, int w) {
+        double samplesPerPixel = span / (double) w;
+        int level = pyramid.levelFor(samplesPerPixel, Math.max(0, start));
+        for (int x = 0; x < w; x++) {
+            long from = start + (long) Math.floor(x * samplesPerPixel);
+            long to = start + (long) Math.floor((x + 1) * samplesPerPixel);
+            pixelSet[x] = from >= 0 && pyramid.minMax(from, to, level, range);
+            if (pixelSet[x]) {
+                pixelMin[x] = range[0];
+                pixelMax[x] = range[1];
+            }
+        }
+    }
+
+    private void drawAnalogLane(Graphics2D g2, String name, Color color, int top, int height, int w) {
+        if (height <= 0) {
+            return;
+        }
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        for (int x = 0; x < w; x++) {
+            if (pixelSet[x]) {
+                lo = Math.min(lo, pixelMin[x]);
+                hi = Math.max(hi, pixelMax[x]);
+            }
+        }
+        g2.setColor(new Color(240, 240, 240));
+        g2.drawLine(0, top + height, w, top + height);
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(name, 4, top + 14);
+        if (lo > hi) {
+            return;
+        }
+        int range = Math.max(1, hi - lo);
+        g2.setColor(color);
+        int prevX = -1;
+        int prevMin = 0;
+        int prevMax = 0;
+        for (int x = 0; x < w; x++) {
+            if (!pixelSet[x]) {
+                continue;
+            }
+            int yMin = top + height - 2 - (int) ((long) (pixelMin[x] - lo) * (height - 4) / range);
+            int yMax = top + height - 2 - (int) ((long) (pixelMax[x] - lo) * (height - 4) / range);
+            if (prevX < 0) {
+                g2.drawLine(x, yMax, x, yMin);
+            } else if (x - prevX > 1) {
+                g2.drawLine(prevX, (prevMin + prevMax) / 2, x, (yMin + yMax) / 2);
+                g2.drawLine(x, yMax, x, yMin);
+            } else {
+                g2.drawLine(x, Math.min(yMax, prevMin), x, Math.max(yMin, prevMax));
+            }
+            prevX = x;
+            prevMin = yMin;
+            prevMax = yMax;
+        }
+    }
+
+    private void drawDigitalLane(Graphics2D g2, String name, int top, int w) {
+        int high = top + 3;
+        int low = top + DIGITAL_LANE_HEIGHT - 3;
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(name, 4, top + DIGITAL_LANE_HEIGHT - 4);
+        g2.setColor(new Color(0, 120, 120));
+        int prevY = -1;
+        int prevX = -1;
+        for (int x = 30; x < w; x++) {
+            if (!pixelSet[x]) {
+                continue;
+            }
+            if (pixelMin[x] != pixelMax[x]) {
+                // transitions within the pixel
+                g2.drawLine(x, high, x, low);
+                prevY = pixelMax[x] != 0 ? high : low;
+            } else {
+                int yv = pixelMin[x] != 0 ? high : low;
+                if (prevY >= 0 && prevY != yv) {
+                    g2.drawLine(x, high, x, low);
+                }
+                g2.drawLine(prevX >= 0 ? prevX + 1 : x, yv, x, yv);
+                prevY = yv;
+            }
+            prevX = x;
+        }
+    }
+}
@@ -2,100 +2,272 @@ package ceu.biolab;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
+/// Live trace of one signal showing the last getWindow() samples across the width of the panel.
+/// Samples are kept in a primitive ring, and reduced as they arrive to one min/max pair per pixel column,
+/// so painting costs one vertical segment per pixel whatever the sampling rate and however long the
+/// acquisition has been running. The columns are rebuilt from the ring only when the width changes.
+///
+/// The vertical scale follows a sliding window of recent samples (see SlidingRange), optionally ignoring
+/// outliers, without scanning the history.
+///
+/// Grid and trace are kept in an off-screen image: a repaint shifts it left by the columns added since the
+/// last one and draws just those, so the cost of a frame depends on the new samples, not on the panel size.
+///
+/// Must be used from the event dispatch thread.
 public class SignalPanel extends JPanel {
-    private java.util.List<Integer> samples = new java.util.ArrayList<>();
+    private static final long serialVersionUID = 1L;
+
     private static final int BASE_HEIGHT = 300;
-    private static final int X_STEP = 1;
+
+    /// Default number of samples shown (5 s at 1000 Hz)
+    public static final int DEFAULT_WINDOW = 5000;
+
+    /// Last samples received, samples[n % window] is sample n
+    private short[] samples = new short[DEFAULT_WINDOW];
+    private long total = 0;
+
+    /// Per-pixel column reduction of the samples: column c covers the samples n with n * width / window == c
+    private int columns = 0;
+    private int[] columnMin = new int[0];
+    private int[] columnMax = new int[0];
+    private long[] columnId = new long[0];
+    private long lastColumn = -1;
+
+    private static final int GRID_SPACING = 16;
+
+    /// Grid and trace as last drawn, up to drawnColumn
+    private transient BufferedImage backBuffer = null;
+    private long drawnColumn = -1;
+    private boolean fullRedraw = true;
+    private int scaleMin = 0;
+    private int scaleMax = 1;
+    private boolean scaled = false;
+
+    /// Range of the last samples used for autoscaling; autoscaleWindow 0 means the window shown
+    private transient SlidingRange range = new SlidingRange(DEFAULT_WINDOW);
+    private int autoscaleWindow = 0;
 
     public SignalPanel() {
         setPreferredSize(new Dimension(600, BASE_HEIGHT));
         setBackground(Color.WHITE);
     }
 
+    /// Number of samples shown across the panel.
+    public int getWindow() {
+        return samples.length;
+    }
+
+    /// Sets the number of samples shown across the panel (e.g. a few seconds at the sampling rate) and clears it.
+    public void setWindow(int window) {
+        samples = new short[window];
+        if (autoscaleWindow == 0) {
+            range = newRange(window);
+        }
+        clear();
+    }
+
+    /// Sets how the vertical scale follows the signal.
+    /// \param[in] window Number of most recent samples the scale is fitted to, 0 for the samples shown
+    /// \param[in] clipPercent Percentage of the samples ignored at each end (e.g. 1 so that a few spikes
+    ///                        do not squash the trace), 0 to fit the min and max
+    public void setAutoscale(int window, double clipPercent) {
+        autoscaleWindow = window;
+        range = new SlidingRange(window > 0 ? window : samples.length);
+        range.setClipPercent(clipPercent);
+        clear();
+    }
+
+    private SlidingRange newRange(int window) {
+        SlidingRange r = new SlidingRange(window);
+        r.setClipPercent(range.getClipPercent());
+        return r;
+    }
+
     public void clear() {
-        samples.clear();
+        total = 0;
+        lastColumn = -1;
+        Arrays.fill(columnId, -1);
+        range.clear();
+        scaled = false;
+        fullRedraw = true;
         repaint();
     }
 
     public void addSample(int value) {
-        samples.add(value);
+        append((short) value);
+        repaint();
+    }
 
-        int width = Math.max(600, samples.size() * X_STEP);
-        setPreferredSize(new Dimension(width, BASE_HEIGHT));
-        revalidate();
+    /// Adds several samples with a single repaint (see DisplayBatcher).
+    public void addSamples(short[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            append(values[i]);
+        }
         repaint();
+    }
 
-        SwingUtilities.invokeLater(() -> {
-            JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(
-                    JViewport.class, this
-            );
-            if (viewport != null) {
-                Rectangle viewRect = viewport.getViewRect();
-                int newX = getWidth() - viewRect.width;
-                if (newX < 0) newX = 0;
-                viewport.setViewPosition(new Point(newX, viewRect.y));
-            }
-        });
+    private void append(short value) {
+        long n = total++;
+        samples[(int) (n % samples.length)] = value;
+        range.add(value);
+        if (columns > 0) {
+            reduce(n, value);
+        }
+    }
+
+    /// Adds sample n to the min/max of its column.
+    private void reduce(long n, int value) {
+        long column = n * columns / samples.length;
+        int slot = (int) (column % columns);
+        if (columnId[slot] != column) {
+            columnId[slot] = column;
+            columnMin[slot] = value;
+            columnMax[slot] = value;
+        } else {
+            columnMin[slot] = Math.min(columnMin[slot], value);
+            columnMax[slot] = Math.max(columnMax[slot], value);
+        }
+        lastColumn = column;
     }
 
+    /// Rebuilds the columns for a new width from the samples still in the ring.
+    private void rebuildColumns(int width) {
+        columns = width;
+        columnMin = new int[width];
+        columnMax = new int[width];
+        columnId = new long[width];
+        Arrays.fill(columnId, -1);
+        lastColumn = -1;
+        fullRedraw = true;
+        for (long n = Math.max(0, total - samples.length); n < total; n++) {
+            reduce(n, samples[(int) (n % samples.length)]);
+        }
+    }
 
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        if (samples.isEmpty()) return;
-
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-
         int w = getWidth();
         int h = getHeight();
-
-
-        int spacing = 16;
-
-        g2.setColor(new Color(180, 180, 180, 120));
-        float[] dash = {1f, spacing - 1f};
-        g2.setStroke(new BasicStroke(
-                1f,
-                BasicStroke.CAP_ROUND,
-                BasicStroke.JOIN_BEVEL,
-                0f,
-                dash,
-                0f
-        ));
-
-        for (int x = 0; x < w; x += spacing) {
-            g2.drawLine(x, 0, x, h);
+        if (w <= 0 || h <= 0) {
+            return;
         }
+        if (w != columns) {
+            rebuildColumns(w);
+        }
+        render(w, h);
+        g.drawImage(backBuffer, 0, 0, null);
+    }
 
-        for (int y = 0; y < h; y += spacing) {
-            g2.drawLine(0, y, w, y);
+    /// Brings the back buffer up to date: in the steady state the image is shifted left by the number of new
+    /// columns and only those are drawn; everything is redrawn after a resize, a clear or a change of scale.
+    private void render(int w, int h) {
+        boolean full = fullRedraw || backBuffer == null || backBuffer.getWidth() != w || backBuffer.getHeight() != h;
+        if (backBuffer == null || backBuffer.getWidth() != w || backBuffer.getHeight() != h) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            backBuffer = gc != null ? gc.createCompatibleImage(w, h)
+                    : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        }
+        if (updateScale() || lastColumn - drawnColumn >= w) {
+            full = true;
         }
 
-        g2.setStroke(new BasicStroke(0.5f));
-        g2.setColor(new Color(0, 0, 0, 150));
-        int midY = h / 2;
-        g2.drawLine(0, midY, w, midY);
+        long firstColumn = lastColumn - columns + 1;
+        int x0 = full ? 0 : (int) Math.max(0, drawnColumn - firstColumn);
+        Graphics2D g2 = backBuffer.createGraphics();
+        try {
+            int shift = (int) (lastColumn - drawnColumn);
+            if (!full && shift > 0) {
+                g2.copyArea(shift, 0, w - shift, h, -shift, 0);
+            }
+            g2.setColor(getBackground());
+            g2.fillRect(x0, 0, w - x0, h);
 
-        int min = samples.stream().min(Integer::compareTo).orElse(0);
-        int max = samples.stream().max(Integer::compareTo).orElse(1);
-        int range = Math.max(1, max - min);
+            // grid of dots every GRID_SPACING pixels, scrolling with the trace
+            g2.setColor(new Color(180, 180, 180, 120));
+            for (int x = x0; x < w; x++) {
+                if (Math.floorMod(firstColumn + x, GRID_SPACING) == 0) {
+                    for (int y = 0; y < h; y += GRID_SPACING) {
+                        g2.drawLine(x, y, x, y);
+                    }
+                }
+            }
+            g2.setColor(new Color(0, 0, 0, 150));
+            g2.drawLine(x0, h / 2, w - 1, h / 2);
 
+            if (total > 0) {
+                drawTrace(g2, Math.max(0, firstColumn + x0), firstColumn, h);
+            }
+        } finally {
+            g2.dispose();
+        }
+        drawnColumn = lastColumn;
+        fullRedraw = false;
+    }
+
+    /// Draws the columns from fromColumn to the last one. Each column is its min-max segment, extended to
+    /// join the previous one; columns without samples (window narrower than the panel) are bridged.
+    private void drawTrace(Graphics2D g2, long fromColumn, long firstColumn, int h) {
+        int range = Math.max(1, scaleMax - scaleMin);
         g2.setColor(new Color(198, 0, 0));
-        g2.setStroke(new BasicStroke(1.5f));
-
-        int prevX = 0;
-        int prevY = mapSampleToY(samples.get(0), min, range, h);
-        for (int i = 1; i < samples.size(); i++) {
-            int x = i * X_STEP;
-            int y = mapSampleToY(samples.get(i), min, range, h);
-            g2.drawLine(prevX, prevY, x, y);
+
+        int prevX = -1;
+        int prevMin = 0;
+        int prevMax = 0;
+        // the previous drawn column, to join the first new one to it
+        for (long c = fromColumn - 1; c >= Math.max(0, firstColumn); c--) {
+            int slot = (int) (c % columns);
+            if (columnId[slot] == c) {
+                prevX = (int) (c - firstColumn);
+                prevMin = mapSampleToY(columnMin[slot], scaleMin, range, h);
+                prevMax = mapSampleToY(columnMax[slot], scaleMin, range, h);
+                break;
+            }
+            if (fromColumn - c > columns) {
+                break;
+            }
+        }
+        for (long c = fromColumn; c <= lastColumn; c++) {
+            int slot = (int) (c % columns);
+            if (columnId[slot] != c) {
+                continue;
+            }
+            int x = (int) (c - firstColumn);
+            int yMin = mapSampleToY(columnMin[slot], scaleMin, range, h);
+            int yMax = mapSampleToY(columnMax[slot], scaleMin, range, h);
+            if (prevX < 0) {
+                g2.drawLine(x, yMax, x, yMin);
+            } else if (x - prevX > 1) {
+                g2.drawLine(prevX, (prevMin + prevMax) / 2, x, (yMin + yMax) / 2);
+                g2.drawLine(x, yMax, x, yMin);
+            } else {
+                g2.drawLine(x, Math.min(yMax, prevMin), x, Math.max(yMin, prevMax));
+            }
             prevX = x;
-            prevY = y;
+            prevMin = yMin;
+            prevMax = yMax;
+        }
+    }
+
+    /// Autoscale on the last samples (see setAutoscale()), with some headroom so that the scale (and with it
+    /// the whole back buffer) only changes when the signal leaves it or uses less than half of it.
+    /// \return true if the scale changed
+    private boolean updateScale() {
+        if (range.size() == 0) {
+            return false;
+        }
+        int min = range.lower();
+        int max = range.upper();
+        if (scaled && min >= scaleMin && max <= scaleMax && (max - min) * 2 >= scaleMax - scaleMin) {
+            return false;
         }
+        int pad = Math.max(1, (max - min) / 10);
+        scaleMin = min - pad;
+        scaleMax = max + pad;
+        scaled = true;
+        return true;
     }
 
 
@@ -104,4 +276,3 @@ public class SignalPanel extends JPanel {
         return (int) ((1.0 - norm) * (height - 10)) + 5;
     }
 }
-
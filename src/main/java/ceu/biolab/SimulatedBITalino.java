@@ -0,0 +1,392 @@
+package ceu.biolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/// In-process %BITalino that speaks the same command protocol as the firmware.
+/// It answers the start (channel mask), stop, sampling rate, trigger, battery and version commands,
+/// and streams frames packed and CRC4-protected exactly like the device does, so BITalino.read()
+/// can be exercised and profiled on machines without a Bluetooth stack.
+///
+/// Frames are produced on demand when the reader asks for them. In real-time mode a frame is only
+/// released once its due time (start + n / samplingRate) has passed, otherwise frames are produced
+/// as fast as the reader consumes them.
+public class SimulatedBITalino implements BITalinoTransport {
+
+    /// Produces the raw value (0...1023) of an analog input for a given sample.
+    public interface Waveform {
+        int sample(int channel, long sampleIndex, int samplingRate);
+    }
+
+    private static final int[] SAMPLING_RATES = {1, 10, 100, 1000};
+    private static final byte[] VERSION = "BITalino_v5.1-sim\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final boolean realTime;
+    private final Object lock = new Object();
+    private Waveform waveform = SimulatedBITalino::defaultWaveform;
+    private final Random noise = new Random(1);
+    private double corruptionRate = 0;
+    private double dropRate = 0;
+    private long framesDropped = 0;
+
+    private boolean open = false;
+    private boolean acquiring = false;
+    private int samplingRate = 1000;
+    private int batteryThreshold = 0;
+    private int digitalOutputs = 0;
+
+    /// Physical channels being acquired, in the order they are packed in a frame
+    private int[] channels = new int[0];
+    private int frameBytes = 0;
+    private long periodNanos = 0;
+    private double clockErrorPpm = 0;
+    private long startNanos = 0;
+    private long framesSent = 0;
+    private long lastFrameNanos = 0;
+
+    /// Times (System.nanoTime()) from which the pending replies to version commands can be read, oldest first;
+    /// every command is answered, as a real device does
+    private final ArrayDeque<Long> replies = new ArrayDeque<>();
+    /// Bytes of the oldest pending reply already read
+    private int replyPos = 0;
+    private long replyDelayNanos = 0;
+
+    /// Frame being handed out to a reader that asked for fewer bytes than a frame
+    private final byte[] partial = new byte[8];
+    private int partialPos = 0;
+    private int partialLen = 0;
+
+    private final byte[] scratch = new byte[8];
+    private final int[] values = new int[6];
+
+    /// Creates a simulated device that paces frames at the configured sampling rate.
+    public SimulatedBITalino() {
+        this(true);
+    }
+
+    /// \param[in] realTime true to pace frames at the sampling rate, false to produce them as fast as possible
+    public SimulatedBITalino(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    /// Replaces the generator used for the analog inputs.
+    public void setWaveform(Waveform waveform) {
+        this.waveform = waveform;
+    }
+
+    /// Flips one random bit in the given fraction of frames (0...1) to emulate a noisy link.
+    public void setCorruptionRate(double corruptionRate) {
+        synchronized (lock) {
+            this.corruptionRate = corruptionRate;
+        }
+    }
+
+    /// Skips the given fraction of frames (0...1) to emulate frames lost on the link; the sequence number still advances.
+    public void setDropRate(double dropRate) {
+        synchronized (lock) {
+            this.dropRate = dropRate;
+        }
+    }
+
+    /// Delays the answer to each version command, as a device that has just connected takes a while to reply.
+    public void setReplyDelay(int milliseconds) {
+        synchronized (lock) {
+            this.replyDelayNanos = milliseconds * 1_000_000L;
+        }
+    }
+
+    /// Makes the simulated crystal run off its nominal rate (positive: slower, frames come later and later),
+    /// as the clock of a real device drifts from the host clock. Takes effect at the next start command.
+    public void setClockError(double ppm) {
+        synchronized (lock) {
+            this.clockErrorPpm = ppm;
+        }
+    }
+
+    /// Number of frames skipped since the last start command (see setDropRate()).
+    public long getFramesDropped() {
+        synchronized (lock) {
+            return framesDropped;
+        }
+    }
+
+    public int getSamplingRate() {
+        synchronized (lock) {
+            return samplingRate;
+        }
+    }
+
+    public int getBatteryThreshold() {
+        synchronized (lock) {
+            return batteryThreshold;
+        }
+    }
+
+    /// Digital output states last set with a trigger command (bit 0 is O1).
+    public int getDigitalOutputs() {
+        synchronized (lock) {
+            return digitalOutputs;
+        }
+    }
+
+    public boolean isAcquiring() {
+        synchronized (lock) {
+            return acquiring;
+        }
+    }
+
+    /// Number of frames handed out since the last start command.
+    public long getFramesSent() {
+        synchronized (lock) {
+            return framesSent;
+        }
+    }
+
+    /// System.nanoTime() at which the last frame handed out became available (its due time in real-time
+    /// mode, the time it was produced otherwise); used to measure read latency.
+    public long getLastFrameNanos() {
+        synchronized (lock) {
+            return lastFrameNanos;
+        }
+    }
+
+    @Override
+    public void open(String macAdd) {
+        synchronized (lock) {
+            open = true;
+            acquiring = false;
+            replies.clear();
+            replyPos = 0;
+            partialLen = 0;
+        }
+    }
+
+    @Override
+    public InputStream openInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return SimulatedBITalino.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                return SimulatedBITalino.this.available();
+            }
+        };
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                command(b & 0xFF);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            open = false;
+            acquiring = false;
+            lock.notifyAll();
+        }
+    }
+
+    private void command(int cmd) throws IOException {
+        synchronized (lock) {
+            if (!open) {
+                throw new IOException("Simulated device is not connected");
+            }
+            if (acquiring) {
+                if (cmd == 0x00) {
+                    acquiring = false;
+                    partialLen = 0;
+                } else if ((cmd & 0x03) == 0x03) {
+                    digitalOutputs = (cmd >> 2) & 0x0F;
+                }
+            } else {
+                switch (cmd & 0x03) {
+                    case 0x00:
+                        batteryThreshold = cmd >> 2;
+                        break;
+                    case 0x01:
+                        start(cmd >> 2);
+                        break;
+                    case 0x03:
+                        if (cmd == 0x07) {
+                            replies.addLast(System.nanoTime() + replyDelayNanos);
+                        } else if ((cmd & 0x3C) == 0) {
+                            samplingRate = SAMPLING_RATES[cmd >> 6];
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void start(int mask) {
+        int n = Integer.bitCount(mask & 0x3F);
+        if (n == 0) {
+            return;
+        }
+        channels = new int[n];
+        for (int ch = 0, k = 0; ch < 6; ch++) {
+            if ((mask & (1 << ch)) != 0) {
+                channels[k++] = ch;
+            }
+        }
+        frameBytes = n <= 4 ? (12 + 10 * n + 7) / 8 : (52 + 6 * (n - 4) + 7) / 8;
+        periodNanos = Math.round(1e9 / samplingRate * (1 + clockErrorPpm / 1e6));
+        startNanos = System.nanoTime();
+        framesSent = 0;
+        framesDropped = 0;
+        partialLen = 0;
+        acquiring = true;
+    }
+
+    private int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        synchronized (lock) {
+            while (true) {
+                if (!open) {
+                    return -1;
+                }
+                if (!replies.isEmpty()) {
+                    long waitNanos = replies.peekFirst() - System.nanoTime();
+                    if (waitNanos > 0) {
+                        waitInterruptibly(Math.max(1, waitNanos / 1_000_000));
+                        continue;
+                    }
+                    int n = Math.min(len, VERSION.length - replyPos);
+                    System.arraycopy(VERSION, replyPos, b, off, n);
+                    replyPos += n;
+                    if (replyPos == VERSION.length) {
+                        replies.removeFirst();
+                        replyPos = 0;
+                    }
+                    return n;
+                }
+                if (partialPos < partialLen) {
+                    int n = Math.min(len, partialLen - partialPos);
+                    System.arraycopy(partial, partialPos, b, off, n);
+                    partialPos += n;
+                    return n;
+                }
+                if (!acquiring) {
+                    waitInterruptibly(0);
+                    continue;
+                }
+                long due = framesDue();
+                if (due <= 0) {
+                    long waitNanos = startNanos + framesSent * periodNanos - System.nanoTime();
+                    waitInterruptibly(Math.max(1, waitNanos / 1_000_000));
+                    continue;
+                }
+                int whole = len / frameBytes;
+                if (whole == 0) {
+                    packFrame(partial, 0);
+                    partialLen = frameBytes;
+                    partialPos = 0;
+                    continue;
+                }
+                int n = (int) Math.min(whole, due);
+                for (int i = 0; i < n; i++) {
+                    packFrame(b, off + i * frameBytes);
+                }
+                return n * frameBytes;
+            }
+        }
+    }
+
+    private int available() {
+        synchronized (lock) {
+            if (!open) {
+                return 0;
+            }
+            if (!replies.isEmpty()) {
+                return replies.peekFirst() <= System.nanoTime() ? VERSION.length - replyPos : 0;
+            }
+            if (partialPos < partialLen) {
+                return partialLen - partialPos;
+            }
+            if (!acquiring) {
+                return 0;
+            }
+            long due = framesDue();
+            return due > 0 ? (int) Math.min(due, Integer.MAX_VALUE / 8) * frameBytes : 0;
+        }
+    }
+
+    private long framesDue() {
+        if (!realTime) {
+            return Long.MAX_VALUE;
+        }
+        return (System.nanoTime() - startNanos) / periodNanos + 1 - framesSent;
+    }
+
+    private void waitInterruptibly(long millis) throws IOException {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the simulated device", e);
+        }
+    }
+
+    /// Packs the next frame into buf[off...off+frameBytes-1] with the device bit layout.
+    private void packFrame(byte[] buf, int off) {
+        while (dropRate > 0 && noise.nextDouble() < dropRate) {
+            framesSent++;
+            framesDropped++;
+        }
+        int[] a = values;
+        Arrays.fill(a, 0);
+        for (int k = 0; k < channels.length; k++) {
+            int value = waveform.sample(channels[k], framesSent, samplingRate) & 0x3FF;
+            a[k] = k < 4 ? value : value >> 4;
+        }
+        int digital = Integer.reverse(digitalOutputs) >>> 28;
+        byte[] f = scratch;
+        f[7] = (byte) ((framesSent & 0x0F) << 4);
+        f[6] = (byte) ((digital << 4) | ((a[0] >> 6) & 0x0F));
+        f[5] = (byte) (((a[0] & 0x3F) << 2) | ((a[1] >> 8) & 0x03));
+        f[4] = (byte) (a[1] & 0xFF);
+        f[3] = (byte) (a[2] >> 2);
+        f[2] = (byte) (((a[2] & 0x03) << 6) | ((a[3] >> 4) & 0x3F));
+        f[1] = (byte) (((a[3] & 0x0F) << 4) | ((a[4] >> 2) & 0x0F));
+        f[0] = (byte) (((a[4] & 0x03) << 6) | (a[5] & 0x3F));
+        System.arraycopy(f, 8 - frameBytes, buf, off, frameBytes);
+        buf[off + frameBytes - 1] |= (byte) CRC4.compute(buf, off, frameBytes);
+        if (corruptionRate > 0 && noise.nextDouble() < corruptionRate) {
+            int bit = noise.nextInt(frameBytes * 8);
+            buf[off + bit / 8] ^= (byte) (1 << (bit % 8));
+        }
+        lastFrameNanos = realTime ? startNanos + framesSent * periodNanos : System.nanoTime();
+        framesSent++;
+    }
+
+    /// Sine waves of a different frequency on each channel, centred in the ADC range.
+    private static int defaultWaveform(int channel, long sampleIndex, int samplingRate) {
+        double t = sampleIndex / (double) samplingRate;
+        return 512 + (int) Math.round(400 * Math.sin(2 * Math.PI * (channel + 1) * t));
+    }
+}
@@ -0,0 +1,151 @@
+package ceu.biolab;
+
+/// Minimum and maximum of the last N values of a stream, for autoscaling live traces.
+/// The extremes are kept in two monotonic deques, so add() is amortised O(1) and min()/max() are O(1),
+/// with no scan of the window. Optionally the range can be clipped to percentiles (e.g. 1% and 99%) so that
+/// a few artifact spikes do not squash the trace; percentiles come from a two-level histogram of the window
+/// and cost at most 2 * 256 steps whatever the window length.
+public class SlidingRange {
+
+    private static final int FINE_BINS = 256;
+    private static final int COARSE_BINS = 256;
+
+    private final int window;
+    private final int[] values;
+    private long count = 0;
+
+    // monotonic deques of positions in the stream, as rings of capacity window
+    private final long[] minDeque;
+    private int minHead = 0;
+    private int minSize = 0;
+    private final long[] maxDeque;
+    private int maxHead = 0;
+    private int maxSize = 0;
+
+    private double clipPercent = 0;
+    private int[] fine = null;
+    private int[] coarse = null;
+
+    /// \param[in] window Number of most recent values covered
+    public SlidingRange(int window) {
+        this.window = window;
+        this.values = new int[window];
+        this.minDeque = new long[window];
+        this.maxDeque = new long[window];
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /// Clips lower()/upper() to the given percentile at each end (0 to disable, e.g. 1 for 1% and 99%).
+    public void setClipPercent(double percent) {
+        clipPercent = percent;
+        if (percent > 0 && fine == null) {
+            fine = new int[FINE_BINS * COARSE_BINS];
+            coarse = new int[COARSE_BINS];
+            for (long n = Math.max(0, count - window); n < count; n++) {
+                histogram(values[(int) (n % window)], 1);
+            }
+        } else if (percent <= 0) {
+            fine = null;
+            coarse = null;
+        }
+    }
+
+    public double getClipPercent() {
+        return clipPercent;
+    }
+
+    public void clear() {
+        count = 0;
+        minSize = 0;
+        maxSize = 0;
+        if (fine != null) {
+            fine = new int[FINE_BINS * COARSE_BINS];
+            coarse = new int[COARSE_BINS];
+        }
+    }
+
+    /// Number of values currently in the window.
+    public int size() {
+        return (int) Math.min(count, window);
+    }
+
+    public void add(int value) {
+        long n = count++;
+        int slot = (int) (n % window);
+        if (fine != null && n >= window) {
+            histogram(values[slot], -1);
+        }
+        values[slot] = value;
+        if (fine != null) {
+            histogram(value, 1);
+        }
+
+        long oldest = n - window + 1;
+        if (minSize > 0 && minDeque[minHead] < oldest) {
+            minHead = (minHead + 1) % window;
+            minSize--;
+        }
+        while (minSize > 0 && valueAt(minDeque[(minHead + minSize - 1) % window]) >= value) {
+            minSize--;
+        }
+        minDeque[(minHead + minSize++) % window] = n;
+
+        if (maxSize > 0 && maxDeque[maxHead] < oldest) {
+            maxHead = (maxHead + 1) % window;
+            maxSize--;
+        }
+        while (maxSize > 0 && valueAt(maxDeque[(maxHead + maxSize - 1) % window]) <= value) {
+            maxSize--;
+        }
+        maxDeque[(maxHead + maxSize++) % window] = n;
+    }
+
+    /// Smallest value in the window (0 if empty).
+    public int min() {
+        return minSize == 0 ? 0 : valueAt(minDeque[minHead]);
+    }
+
+    /// Largest value in the window (0 if empty).
+    public int max() {
+        return maxSize == 0 ? 0 : valueAt(maxDeque[maxHead]);
+    }
+
+    /// Lower end of the range: min(), or the lower clip percentile if clipping is enabled.
+    public int lower() {
+        return fine == null || count == 0 ? min() : percentile(clipPercent);
+    }
+
+    /// Upper end of the range: max(), or the upper clip percentile if clipping is enabled.
+    public int upper() {
+        return fine == null || count == 0 ? max() : percentile(100 - clipPercent);
+    }
+
+    private int valueAt(long n) {
+        return values[(int) (n % window)];
+    }
+
+    /// Value below which the given percentage of the window lies (clamped to the 16-bit range).
+    private int percentile(double percent) {
+        int rank = (int) Math.min(size() - 1, Math.max(0, Math.round(percent / 100 * (size() - 1))));
+        int c = 0;
+        while (rank >= coarse[c]) {
+            rank -= coarse[c];
+            c++;
+        }
+        int f = c * FINE_BINS;
+        while (rank >= fine[f]) {
+            rank -= fine[f];
+            f++;
+        }
+        return f + Short.MIN_VALUE;
+    }
+
+    private void histogram(int value, int delta) {
+        int bin = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value)) - Short.MIN_VALUE;
+        fine[bin] += delta;
+        coarse[bin / FINE_BINS] += delta;
+    }
+}
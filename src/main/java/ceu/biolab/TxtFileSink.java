@@ -0,0 +1,42 @@
+package ceu.biolab;
+
+import java.io.File;
+import java.io.IOException;
+
+/// Writes the first acquired channel in the TXT recording format: a line with the sampling rate,
+/// then every sample as a comma-separated value on one line.
+/// Values are formatted straight into a reusable ASCII buffer (see AsciiWriter), so no String is
+/// created per sample.
+public class TxtFileSink implements FrameSink {
+
+    private final AsciiWriter writer;
+    private boolean firstSample = true;
+
+    /// Creates the file and writes the header line.
+    public TxtFileSink(File file, int samplingRate) throws IOException {
+        writer = new AsciiWriter(file);
+        writer.putInt(samplingRate);
+        writer.newLine();
+    }
+
+    @Override
+    public void onBlock(FrameBlock block) throws IOException {
+        short[] samples = block.analog(0);
+        for (int i = 0; i < block.size(); i++) {
+            if (!firstSample) {
+                writer.put(',');
+            }
+            writer.putInt(samples[i]);
+            firstSample = false;
+        }
+    }
+
+    @Override
+    public void onStop(Throwable error) throws IOException {
+        try {
+            writer.newLine();
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ceu.biolab.java;
+
+import ceu.biolab.AcquisitionEngine;
+import ceu.biolab.BITalino;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.FrameSink;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class AcquisitionEngineTest {
+
+    @Test
+    void blockSizeFor_scalesWithSamplingRate() {
+        assertEquals(20, AcquisitionEngine.blockSizeFor(1000));
+        assertEquals(2, AcquisitionEngine.blockSizeFor(100));
+        assertEquals(1, AcquisitionEngine.blockSizeFor(10));
+        assertEquals(1, AcquisitionEngine.blockSizeFor(1));
+    }
+
+    @Test
+    void slowSink_dropsBlocksWithoutStallingReaderOrOtherSinks() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(true);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> (int) (sampleIndex & 0x3FF));
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0});
+
+        AtomicLong fastFrames = new AtomicLong();
+        AtomicLong fastErrors = new AtomicLong();
+        AtomicLong slowDropped = new AtomicLong();
+        Throwable[] stopError = {new Throwable()};
+
+        AcquisitionEngine engine = new AcquisitionEngine(bitalino, 1, 10);
+        engine.setRingCapacity(4);
+        engine.addSink(new FrameSink() {
+            private int expected = -1;
+
+            @Override
+            public void onBlock(FrameBlock block) {
+                short[] a = block.analog(0);
+                for (int i = 0; i < block.size(); i++) {
+                    if (expected >= 0 && a[i] != expected) {
+                        fastErrors.incrementAndGet();
+                    }
+                    expected = (a[i] + 1) & 0x3FF;
+                }
+                fastFrames.addAndGet(block.size());
+            }
+
+            @Override
+            public void onStop(Throwable error) {
+                stopError[0] = error;
+            }
+        });
+        engine.addSink(new FrameSink() {
+            @Override
+            public void onBlock(FrameBlock block) throws InterruptedException {
+                Thread.sleep(100);
+            }
+
+            @Override
+            public void onDropped(long blocks) {
+                slowDropped.addAndGet(blocks);
+            }
+        });
+
+        engine.start();
+        Thread.sleep(1000);
+        engine.stop();
+        bitalino.stop();
+
+        assertNull(stopError[0]);
+        assertThat(engine.getBlocksRead()).isGreaterThan(50);
+        assertEquals(engine.getBlocksRead() * 10, fastFrames.get(), "fast sink sees every block");
+        assertEquals(0, fastErrors.get());
+        assertThat(slowDropped.get()).isPositive();
+    }
+
+    @Test
+    void failingSink_keepsItsFirstErrorWithoutStoppingTheOthers() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(true);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0});
+
+        AtomicLong healthyBlocks = new AtomicLong();
+        IOException diskFull = new IOException("No space left on device");
+        FrameSink healthy = block -> healthyBlocks.incrementAndGet();
+        FrameSink failing = new FrameSink() {
+            @Override
+            public void onBlock(FrameBlock block) throws IOException {
+                throw diskFull;
+            }
+
+            @Override
+            public void onStop(Throwable error) throws IOException {
+                throw new IOException("close failed too");
+            }
+        };
+        FrameSink failingOnStop = new FrameSink() {
+            @Override
+            public void onBlock(FrameBlock block) {
+            }
+
+            @Override
+            public void onStop(Throwable error) throws IOException {
+                throw new IOException("flush failed");
+            }
+        };
+
+        AcquisitionEngine engine = new AcquisitionEngine(bitalino, 1, 10);
+        engine.addSink(healthy);
+        engine.addSink(failing);
+        engine.addSink(failingOnStop);
+        engine.start();
+        Thread.sleep(300);
+        engine.stop();
+        bitalino.stop();
+
+        assertNull(engine.getError());
+        assertNull(engine.getSinkError(healthy));
+        assertSame(diskFull, engine.getSinkError(failing));
+        assertEquals("flush failed", engine.getSinkError(failingOnStop).getMessage());
+        assertEquals(engine.getBlocksRead(), healthyBlocks.get());
+    }
+}
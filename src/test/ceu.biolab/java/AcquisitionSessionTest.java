@@ -0,0 +1,97 @@
+package ceu.biolab.java;
+
+import ceu.biolab.AcquisitionSession;
+import ceu.biolab.BITalino;
+import ceu.biolab.BITalinoException;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AcquisitionSessionTest {
+
+    @Test
+    void eightDevicesAt1000Hz_areMergedOnOneTimeline(@TempDir Path dir) throws Throwable {
+        int nDevices = 8;
+        AcquisitionSession session = new AcquisitionSession(1000);
+        for (int d = 0; d < nDevices; d++) {
+            SimulatedBITalino device = new SimulatedBITalino(true);
+            device.setWaveform((channel, sampleIndex, samplingRate) -> (int) ((sampleIndex + channel) & 0x3FF));
+            int[] channels = d == 1 ? new int[]{2, 5} : new int[]{0, 1, 2, 3, 4, 5};
+            session.addDevice("dev" + d, new BITalino(device), "00:00:00:00:00:0" + d, channels);
+        }
+        Path merged = dir.resolve("merged.csv");
+        session.recordMerged(merged.toFile());
+
+        session.open();
+        session.start();
+        Thread.sleep(2000);
+        session.stop();
+        session.close();
+
+        for (AcquisitionSession.Device device : session.getDevices()) {
+            assertEquals(0, device.getBitalino().getLostFrames());
+            assertThat(device.getEngine().getBlocksRead()).isPositive();
+            assertThat(device.getOffset()).isBetween(0L, 100L);
+        }
+
+        List<String> lines = Files.readAllLines(merged);
+        assertEquals("1000", lines.get(0));
+        String[] header = lines.get(1).split(",");
+        assertThat(header).hasSize(1 + (nDevices - 1) * 6 + 2);
+        assertEquals("dev0:A6", header[6]);
+        assertEquals("dev1:A3", header[7]);
+        assertEquals("dev1:A6", header[8]);
+        assertEquals("dev2:A1", header[9]);
+        assertThat(lines.size() - 2).isBetween(1800, 2300);
+
+        // every device column counts up one per row while the device is running
+        int[] previous = new int[nDevices];
+        Arrays.fill(previous, -1);
+        for (String line : lines.subList(2, lines.size())) {
+            String[] cells = line.split(",", -1);
+            for (int d = 0; d < nDevices; d++) {
+                String cell = cells[d < 2 ? 1 + d * 6 : 1 + d * 6 - 4];
+                if (cell.isEmpty()) {
+                    continue;
+                }
+                int value = Integer.parseInt(cell);
+                if (previous[d] >= 0) {
+                    assertEquals((previous[d] + 1) & 0x3FF, value, "device " + d + " at row " + cells[0]);
+                }
+                previous[d] = value;
+            }
+        }
+    }
+
+    @Test
+    void deviceFailingToStart_stopsTheOthers() throws Throwable {
+        AcquisitionSession session = new AcquisitionSession(1000);
+        SimulatedBITalino good = new SimulatedBITalino(true);
+        session.addDevice("good", new BITalino(good), "00:00:00:00:00:01", new int[]{0});
+        session.addDevice("bad", new BITalino(new SimulatedBITalino(true)), "00:00:00:00:00:02", new int[]{7});
+        session.open();
+
+        assertThrows(BITalinoException.class, session::start);
+        assertThat(good.isAcquiring()).isFalse();
+        session.close();
+    }
+
+    @Test
+    void otherFailures_areKeptAsTheCause() {
+        AcquisitionSession session = new AcquisitionSession(1000);
+        session.addDevice("missing", null, "00:00:00:00:00:01", new int[]{0});
+
+        BITalinoException e = assertThrows(BITalinoException.class, session::open);
+        assertInstanceOf(NullPointerException.class, e.getCause());
+    }
+}
@@ -0,0 +1,67 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.FrameBlockPool;
+import ceu.biolab.SimulatedBITalino;
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+/// Measures BITalino.read() throughput and latency against a SimulatedBITalino.
+/// Usage: BITalinoBenchmark [samplingRate|0 for unpaced] [nSamples] [blockSize] [nChannels] [pool|block|frames]
+public class BITalinoBenchmark {
+
+    public static void main(String[] args) throws Throwable {
+        int samplingRate = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int nSamples = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int nChannels = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+        String api = args.length > 4 ? args[4] : "pool";
+
+        SimulatedBITalino device = new SimulatedBITalino(samplingRate != 0);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", samplingRate != 0 ? samplingRate : 1000);
+
+        int[] channels = new int[nChannels];
+        for (int i = 0; i < nChannels; i++) {
+            channels[i] = i;
+        }
+        bitalino.start(channels);
+        FrameBlockPool pool = new FrameBlockPool(nChannels, blockSize, 2);
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated0 = threads.getCurrentThreadAllocatedBytes();
+
+        long maxLatencyNanos = 0;
+        long totalLatencyNanos = 0;
+        int blocks = 0;
+        long t0 = System.nanoTime();
+        for (int read = 0; read < nSamples; read += blockSize) {
+            if (api.equals("frames")) {
+                bitalino.read(blockSize);
+            } else if (api.equals("block")) {
+                bitalino.readBlock(blockSize);
+            } else {
+                FrameBlock block = pool.acquire();
+                bitalino.read(block);
+                pool.release(block);
+            }
+            long latency = System.nanoTime() - device.getLastFrameNanos();
+            maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+            totalLatencyNanos += latency;
+            blocks++;
+        }
+        long elapsed = System.nanoTime() - t0;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocated0;
+
+        bitalino.stop();
+        bitalino.close();
+
+        long total = (long) blocks * blockSize;
+        System.out.printf("%d frames (%d channels, block %d, %s) in %.3f s: %.0f frames/s%n",
+                total, nChannels, blockSize, api, elapsed / 1e9, total * 1e9 / elapsed);
+        System.out.printf("block latency: mean %.1f us, max %.1f us%n",
+                totalLatencyNanos / 1e3 / blocks, maxLatencyNanos / 1e3);
+        System.out.printf("allocated: %.1f bytes per block%n", allocated / (double) blocks);
+    }
+}
@@ -0,0 +1,161 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.BinaryRecordingReader;
+import ceu.biolab.BinaryRecordingWriter;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.RecordingHeader;
+import ceu.biolab.SimulatedBITalino;
+import ceu.biolab.TxtFileSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryRecordingTest {
+
+    private static final int CHUNK_FRAMES = 500;
+
+    /// Records nBlocks blocks of 100 frames in both the binary and the TXT format.
+    private static List<FrameBlock> record(Path bin, Path txt, int encoding, int[] channels, int nBlocks)
+            throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        Random noise = new Random(channels.length);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> {
+            int value = 512 + (int) (300 * Math.sin(2 * Math.PI * (channel + 1) * sampleIndex / 1000.0));
+            return channel == 2 ? (int) ((sampleIndex * 7) & 0x3FF) : value + noise.nextInt(9) - 4;
+        });
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(channels);
+        RecordingHeader header = new RecordingHeader(encoding, 1000,
+                RecordingHeader.channelMask(channels), "20:16:07:18:17:02", 1_700_000_000_000L, CHUNK_FRAMES);
+        BinaryRecordingWriter writer = new BinaryRecordingWriter(bin.toFile(), header);
+        TxtFileSink txtSink = new TxtFileSink(txt.toFile(), 1000);
+        List<FrameBlock> blocks = new ArrayList<>();
+        for (int b = 0; b < nBlocks; b++) {
+            FrameBlock block = bitalino.readBlock(100);
+            writer.onBlock(block);
+            txtSink.onBlock(block);
+            blocks.add(block);
+        }
+        writer.onStop(null);
+        txtSink.onStop(null);
+        bitalino.stop();
+        bitalino.close();
+        return blocks;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {RecordingHeader.ENCODING_PACKED, RecordingHeader.ENCODING_RICE})
+    void recording_roundTripsAndIsSmallerThanTxt(int encoding, @TempDir Path dir) throws Throwable {
+        Path bin = dir.resolve("rec.bin");
+        Path txt = dir.resolve("rec.txt");
+        int[] channels = {1, 3, 4};
+        List<FrameBlock> blocks = record(bin, txt, encoding, channels, 23);
+
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(bin.toFile())) {
+            RecordingHeader header = reader.getHeader();
+            assertEquals(1000, header.getSamplingRate());
+            assertEquals(0b11010, header.getChannelMask());
+            assertEquals("20:16:07:18:17:02", header.getMacAddress());
+            assertEquals(1_700_000_000_000L, header.getStartTimeMillis());
+            assertEquals(5, reader.getChunkCount());
+
+            // read backwards to check the chunks do not depend on each other
+            FrameBlock chunk = new FrameBlock(channels.length, CHUNK_FRAMES);
+            for (int c = reader.getChunkCount() - 1; c >= 0; c--) {
+                long offset = reader.readChunk(c, chunk);
+                assertEquals((long) c * CHUNK_FRAMES, offset);
+                assertEquals(c == 4 ? 300 : CHUNK_FRAMES, chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    long n = offset + i;
+                    FrameBlock block = blocks.get((int) (n / 100));
+                    int j = (int) (n % 100);
+                    for (int k = 0; k < channels.length; k++) {
+                        assertEquals(block.getAnalog(k, j), chunk.getAnalog(k, i), "sample " + n);
+                    }
+                    for (int port = 0; port < 4; port++) {
+                        assertEquals(block.getDigital(port, j), chunk.getDigital(port, i));
+                    }
+                }
+            }
+            assertEquals(2, reader.chunkOf(1234));
+        }
+
+        // the TXT only holds the first channel: one TXT per channel would be more than twice as large
+        assertThat(Files.size(bin) * 2).isLessThan(Files.size(txt) * channels.length);
+        if (encoding == RecordingHeader.ENCODING_RICE) {
+            // a noisy sine takes well under the 10 bits of a packed sample
+            assertThat(Files.size(bin) * 8.0 / (2300 * channels.length)).isLessThan(6);
+        }
+    }
+
+    @Test
+    void largestResiduals_roundTripWithinTheLargestPayload(@TempDir Path dir) throws Throwable {
+        // a steep triangle, which takes the second-order predictor, with a spike to 1023 at each minimum:
+        // the sample after a spike leaves a residual near -2046, escaped and needing all 12 raw bits
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> {
+            int phase = (int) (sampleIndex % 254);
+            return phase == 0 ? 1023 : 8 * Math.min(phase, 254 - phase);
+        });
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0, 1});
+        RecordingHeader header = new RecordingHeader(RecordingHeader.ENCODING_RICE, 1000,
+                RecordingHeader.channelMask(new int[]{0, 1}), "00:00:00:00:00:00", 0, CHUNK_FRAMES);
+        Path bin = dir.resolve("rec.bin");
+        BinaryRecordingWriter writer = new BinaryRecordingWriter(bin.toFile(), header);
+        FrameBlock block = bitalino.readBlock(CHUNK_FRAMES);
+        writer.onBlock(block);
+        writer.onStop(null);
+        bitalino.stop();
+        bitalino.close();
+
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(bin.toFile())) {
+            FrameBlock chunk = new FrameBlock(2, CHUNK_FRAMES);
+            reader.readChunk(0, chunk);
+            for (int i = 0; i < CHUNK_FRAMES; i++) {
+                assertEquals(block.getAnalog(0, i), chunk.getAnalog(0, i), "sample " + i);
+                assertEquals(block.getAnalog(1, i), chunk.getAnalog(1, i), "sample " + i);
+            }
+        }
+    }
+
+    @Test
+    void corruptedChunk_isReportedWithoutLosingTheOthers(@TempDir Path dir) throws Throwable {
+        Path bin = dir.resolve("rec.bin");
+        record(bin, dir.resolve("rec.txt"), RecordingHeader.ENCODING_RICE, new int[]{0}, 15);
+
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(bin.toFile())) {
+            assertEquals(3, reader.getChunkCount());
+            try (RandomAccessFile file = new RandomAccessFile(bin.toFile(), "rw")) {
+                file.seek(RecordingHeader.HEADER_BYTES + 12);
+                int firstChunk = RecordingHeader.CHUNK_HEADER_BYTES + file.readInt();
+                long pos = RecordingHeader.HEADER_BYTES + firstChunk + RecordingHeader.CHUNK_HEADER_BYTES + 10;
+                file.seek(pos);
+                int b = file.read();
+                file.seek(pos);
+                file.write(b ^ 0x40);
+            }
+
+            FrameBlock chunk = new FrameBlock(1, CHUNK_FRAMES);
+            assertThrows(IOException.class, () -> reader.readChunk(1, chunk));
+            assertEquals(0, reader.readChunk(0, chunk));
+            assertEquals(2 * CHUNK_FRAMES, reader.readChunk(2, chunk));
+        }
+    }
+}
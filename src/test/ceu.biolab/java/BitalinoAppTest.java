@@ -103,4 +103,24 @@ public class BitalinoAppTest {
         assertFalse(app.startBtn.isEnabled());
         assertTrue(app.stopBtn.isEnabled());
     }
+
+    @Test
+    void startAction_deviceFailsToStart_leavesAcquisitionStopped() throws Throwable {
+        BITalino mockDevice = mock(BITalino.class);
+        doThrow(new RuntimeException("link lost")).when(mockDevice).start(any());
+        BitalinoApp app = new BitalinoApp();
+        app.setBitalino(mockDevice);
+
+        app.getMacField().setText("98:D3:91:FD:69:49");
+        app.getSamplingCombo().setSelectedItem(100);
+        app.typeCombo.setSelectedItem("EMG");
+
+        app.startAction(new ActionEvent(app, 0, "start"));
+
+        assertThat(app.outputArea.getText()).contains("Error starting acquisition: link lost");
+        assertFalse(app.running.get());
+        assertTrue(app.startBtn.isEnabled());
+        assertFalse(app.stopBtn.isEnabled());
+        assertFalse(app.saveBtn.isEnabled());
+    }
 }
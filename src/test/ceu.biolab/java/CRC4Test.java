@@ -0,0 +1,76 @@
+package ceu.biolab.java;
+
+import ceu.biolab.CRC4;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CRC4Test {
+
+    /// Bit-by-bit LFSR of the original BITalino API, used as reference
+    private static int lfsr(byte[] buffer, int off, int len) {
+        int x0 = 0, x1 = 0, x2 = 0, x3 = 0;
+        for (int bytes = 0; bytes < len; bytes++) {
+            for (int bit = 7; bit > -1; bit--) {
+                int inp = (buffer[off + bytes]) >> bit & 0x01;
+                if (bytes == len - 1 && bit < 4) {
+                    inp = 0;
+                }
+                int out = x3;
+                x3 = x2;
+                x2 = x1;
+                x1 = out ^ x0;
+                x0 = inp ^ out;
+            }
+        }
+        return (x3 << 3) | (x2 << 2) | (x1 << 1) | x0;
+    }
+
+    @Test
+    void compute_matchesBitwiseLfsr() {
+        Random random = new Random(42);
+        byte[] buf = new byte[16];
+        for (int n = 0; n < 10_000; n++) {
+            random.nextBytes(buf);
+            int len = 3 + random.nextInt(6);
+            assertEquals(lfsr(buf, 2, len), CRC4.compute(buf, 2, len));
+        }
+    }
+
+    @Test
+    void countValid_stopsAtFirstCorruptedFrame() {
+        Random random = new Random(7);
+        int frameBytes = 4;
+        byte[] block = new byte[10 * frameBytes];
+        random.nextBytes(block);
+        for (int n = 0; n < 10; n++) {
+            int last = n * frameBytes + frameBytes - 1;
+            block[last] = (byte) ((block[last] & 0xF0) | CRC4.compute(block, n * frameBytes, frameBytes));
+        }
+        assertEquals(10, CRC4.countValid(block, 0, frameBytes, 10));
+        assertTrue(CRC4.check(block, 6 * frameBytes, frameBytes));
+
+        block[6 * frameBytes + 1] ^= 0x10;
+        assertFalse(CRC4.check(block, 6 * frameBytes, frameBytes));
+        assertEquals(6, CRC4.countValid(block, 0, frameBytes, 10));
+    }
+
+    @Test
+    void slideTable_rollsRegisterLikeRecomputing() {
+        Random random = new Random(3);
+        byte[] stream = new byte[200];
+        random.nextBytes(stream);
+        for (int window = 2; window <= 7; window++) {
+            byte[] slide = CRC4.slideTable(window);
+            int reg = CRC4.register(stream, 0, window);
+            for (int off = 0; off + window < stream.length; off++) {
+                reg = CRC4.update(reg, stream[off + window]) ^ slide[stream[off] & 0xFF];
+                assertEquals(CRC4.register(stream, off + 1, window), reg);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.DisplayBatcher;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DisplayBatcherTest {
+
+    @Test
+    void samplesAt1000Hz_reachTheEdtInFewBatchesInOrder() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(true);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> (int) ((sampleIndex + channel) & 0x3FF));
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0, 1});
+
+        List<Integer> received = new ArrayList<>();
+        AtomicInteger batches = new AtomicInteger();
+        long[] next = {0};
+        DisplayBatcher batcher = new DisplayBatcher(2, 1000, 30, (samples, digital, count, firstSample) -> {
+            assertTrue(SwingUtilities.isEventDispatchThread());
+            assertEquals(next[0], firstSample);
+            for (int i = 0; i < count; i++) {
+                received.add((int) samples[0][i]);
+                assertEquals((samples[0][i] + 1) & 0x3FF, samples[1][i]);
+            }
+            next[0] += count;
+            batches.incrementAndGet();
+        });
+        batcher.start();
+        int blocks = 100;
+        for (int b = 0; b < blocks; b++) {
+            batcher.offer(bitalino.readBlock(10));
+        }
+        batcher.stop();
+        SwingUtilities.invokeAndWait(() -> { });
+        bitalino.stop();
+        bitalino.close();
+
+        assertEquals(blocks * 10, received.size());
+        for (int n = 0; n < received.size(); n++) {
+            assertEquals(n & 0x3FF, received.get(n));
+        }
+        // about 30 batches for one second of signal instead of one event per sample
+        assertThat(batches.get()).isBetween(5, 60);
+        assertThat(batcher.getMaxLagNanos()).isPositive().isLessThan(500_000_000L);
+        assertEquals(0, batcher.getSkippedFrames());
+    }
+}
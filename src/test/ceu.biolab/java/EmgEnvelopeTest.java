@@ -0,0 +1,128 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.EmgAnalysisSink;
+import ceu.biolab.EmgEnvelope;
+import ceu.biolab.FilterChain;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EmgEnvelopeTest {
+
+    /// Contractions of the simulated EMG: onset and offset, in s
+    private static final double[][] BURSTS = {{3, 4}, {5.5, 5.9}, {7, 9.5}, {11, 11.3}};
+
+    /// Noise around 512, 3 ADC units at rest and 120 during the bursts, with a slow baseline drift.
+    private static int emg(long sampleIndex, int samplingRate) {
+        double t = sampleIndex / (double) samplingRate;
+        double amplitude = 3;
+        for (double[] burst : BURSTS) {
+            amplitude = t >= burst[0] && t < burst[1] ? 120 : amplitude;
+        }
+        long h = (sampleIndex + 1) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        double v = 512 + 40 * Math.sin(2 * Math.PI * 0.2 * t) + amplitude * ((h & 0xFFFF) / 32767.5 - 1);
+        return (int) Math.max(0, Math.min(1023, Math.round(v)));
+    }
+
+    private static BITalino simulated(int rate) throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> emg(sampleIndex, samplingRate));
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", rate);
+        bitalino.start(new int[]{0});
+        return bitalino;
+    }
+
+    @Test
+    void runningArvAndRms_matchTheWholeWindow() {
+        int rate = 1000;
+        EmgEnvelope envelope = new EmgEnvelope(rate, 50, null);
+        FilterChain band = FilterChain.forPreset(FilterChain.Preset.EMG, 1, rate, 50);
+        int w = envelope.getWindow();
+        int[] filtered = new int[20 * rate];
+        short[] one = new short[1];
+        for (int n = 0; n < filtered.length; n++) {
+            one[0] = (short) emg(n, rate);
+            filtered[n] = (int) Math.round(band.filter(0, one[0]));
+            envelope.process(one, 0, 1);
+            if (n % 7 != 0) {
+                continue;
+            }
+            long abs = 0;
+            long squares = 0;
+            for (int k = Math.max(0, n - w + 1); k <= n; k++) {
+                abs += Math.abs(filtered[k]);
+                squares += (long) filtered[k] * filtered[k];
+            }
+            assertEquals(abs / (double) w, envelope.getArv(), 1e-12, "ARV at " + n);
+            assertEquals(Math.sqrt(squares / (double) w), envelope.getRms(), 1e-12, "RMS at " + n);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1000, 100})
+    void everyContractionIsFoundOnce(int rate, @TempDir Path dir) throws Throwable {
+        BITalino bitalino = simulated(rate);
+        Path envelopeFile = dir.resolve("emg_envelope.csv");
+        Path activationFile = dir.resolve("emg_activations.csv");
+        EmgAnalysisSink sink = new EmgAnalysisSink(envelopeFile.toFile(), activationFile.toFile(), rate, 50);
+        int seconds = 12;
+        int block = Math.max(1, rate / 50) + 3;
+        int remaining = seconds * rate;
+        while (remaining > 0) {
+            FrameBlock frames = bitalino.readBlock(Math.min(block, remaining));
+            sink.onBlock(frames);
+            remaining -= frames.size();
+        }
+        bitalino.stop();
+        bitalino.close();
+        sink.onStop(null);
+
+        EmgEnvelope envelope = sink.getEnvelope();
+        assertThat(envelope.getOnThreshold()).isGreaterThan(envelope.getOffThreshold()).isLessThan(30);
+        assertThat(envelope.isActive()).isFalse();
+        assertEquals(BURSTS.length, envelope.getActivations());
+
+        List<String> activations = Files.readAllLines(activationFile);
+        assertEquals(String.valueOf(rate), activations.get(0));
+        assertEquals("onset,offset,duration_ms,peak_rms", activations.get(1));
+        assertEquals(BURSTS.length + 2, activations.size());
+        for (int i = 0; i < BURSTS.length; i++) {
+            String[] row = activations.get(i + 2).split(",");
+            double onset = Long.parseLong(row[0]) / (double) rate;
+            double offset = Long.parseLong(row[1]) / (double) rate;
+            assertThat(onset).as("onset %d", i).isCloseTo(BURSTS[i][0], within(0.010));
+            assertThat(offset).as("offset %d", i).isCloseTo(BURSTS[i][1], within(0.040));
+            assertThat(Double.parseDouble(row[3])).isGreaterThan(40);
+        }
+
+        // the stored envelope is the live one, decimated, and its active flag follows the activations
+        List<String> stored = Files.readAllLines(envelopeFile);
+        int envelopeRate = Math.min(rate, EmgAnalysisSink.ENVELOPE_HZ);
+        assertEquals(String.valueOf(envelopeRate), stored.get(0));
+        assertEquals("sample,arv,rms,active", stored.get(1));
+        assertEquals(seconds * envelopeRate + 2, stored.size());
+        List<String> rows = stored.subList(2, stored.size());
+        String[] last = rows.get(rows.size() - 1).split(",");
+        assertEquals(seconds * rate - 1, Long.parseLong(last[0]));
+        assertEquals(envelope.getRms(), Double.parseDouble(last[2]), 0.05);
+        String[] during = rows.get((int) (8 * envelopeRate)).split(",");
+        String[] rest = rows.get((int) (10 * envelopeRate)).split(",");
+        assertEquals("1", during[3]);
+        assertEquals("0", rest[3]);
+        assertThat(Double.parseDouble(during[1])).isLessThan(Double.parseDouble(during[2]));
+    }
+}
@@ -0,0 +1,132 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.FilterChain;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.SimulatedBITalino;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilterChainTest {
+
+    @Test
+    void ecgPreset_removesBaselineAndMainsAndKeepsTheBand() {
+        int rate = 1000;
+        FilterChain chain = FilterChain.forPreset(FilterChain.Preset.ECG, 1, rate, 50);
+        assertThat(chain.gain(rate, 10)).isBetween(0.9, 1.05);
+        assertThat(chain.gain(rate, 50)).isLessThan(0.03);
+        assertThat(chain.gain(rate, 0.05)).isLessThan(0.05);
+
+        // 10 Hz signal on a 512 offset, with a slow baseline wander and 50 Hz hum
+        short[] signal = new short[5 * rate];
+        for (int n = 0; n < signal.length; n++) {
+            double t = n / (double) rate;
+            signal[n] = (short) Math.round(512 + 200 * Math.sin(2 * Math.PI * 10 * t)
+                    + 80 * Math.sin(2 * Math.PI * 0.1 * t) + 100 * Math.sin(2 * Math.PI * 50 * t));
+        }
+        short[] whole = signal.clone();
+        chain.process(0, whole, 0, whole.length);
+
+        // streaming in blocks of 20 gives the same samples as filtering the whole signal at once
+        FilterChain streamed = FilterChain.forPreset(FilterChain.Preset.ECG, 1, rate, 50);
+        short[] blocks = signal.clone();
+        for (int from = 0; from < blocks.length; from += 20) {
+            streamed.process(0, blocks, from, 20);
+        }
+        assertArrayEquals(whole, blocks);
+
+        // after settling: no offset, no hum, the 10 Hz component untouched
+        int from = 3 * rate;
+        double mean = 0;
+        for (int n = from; n < whole.length; n++) {
+            mean += whole[n];
+        }
+        mean /= whole.length - from;
+        assertThat(Math.abs(mean)).isLessThan(5);
+        assertThat(amplitude(whole, from, rate, 50)).isLessThan(5);
+        assertThat(amplitude(whole, from, rate, 10)).isBetween(180.0, 210.0);
+    }
+
+    @Test
+    void rawOffset_doesNotRingAtStartUp() {
+        int rate = 1000;
+        FilterChain chain = FilterChain.forPreset(FilterChain.Preset.ECG, 2, rate, 50);
+        short[] flat = new short[2 * rate];
+        Arrays.fill(flat, (short) 512);
+        chain.process(0, flat, 0, flat.length);
+        assertArrayEquals(new short[flat.length], flat);
+
+        // a 10 Hz signal on the offset is in the band from its first samples, on the other channel too
+        short[] signal = new short[2 * rate];
+        for (int n = 0; n < signal.length; n++) {
+            signal[n] = (short) Math.round(530 + 20 * Math.sin(2 * Math.PI * 10 * n / rate));
+        }
+        chain.process(1, signal, 0, signal.length);
+        for (short y : signal) {
+            assertThat((int) y).isBetween(-40, 40);
+        }
+
+        // a reset starts again from the next sample
+        chain.reset();
+        short[] after = new short[100];
+        Arrays.fill(after, (short) 300);
+        chain.process(0, after, 0, after.length);
+        assertArrayEquals(new short[after.length], after);
+    }
+
+    @Test
+    void sectionsAboveNyquistAreLeftOut() {
+        assertEquals(4, FilterChain.forPreset(FilterChain.Preset.EMG, 1, 1000, 50).getSections());
+        // 450 Hz low-pass and 50 Hz notch cannot be realised at 100 Hz
+        assertEquals(2, FilterChain.forPreset(FilterChain.Preset.EMG, 1, 100, 50).getSections());
+    }
+
+    @Test
+    void sixChannelsAt1000Hz_filterWithoutAllocating() throws Throwable {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        FilterChain chain = FilterChain.forPreset(FilterChain.Preset.EMG, 6, 1000, 50);
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0, 1, 2, 3, 4, 5});
+        FrameBlock block = bitalino.readBlock(20);
+        bitalino.stop();
+        bitalino.close();
+
+        for (int b = 0; b < 10_000; b++) {
+            chain.process(block);
+        }
+
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long t0 = System.nanoTime();
+        // one minute of signal
+        for (int b = 0; b < 3000; b++) {
+            chain.process(block);
+        }
+        long elapsed = System.nanoTime() - t0;
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+        assertThat(allocated).isLessThan(1024);
+        assertThat(elapsed).isLessThan(1_000_000_000L);
+    }
+
+    /// Amplitude of the component of a signal at a frequency (over a whole number of periods).
+    private static double amplitude(short[] x, int from, int rate, double frequency) {
+        double re = 0;
+        double im = 0;
+        int n = x.length - from;
+        for (int i = from; i < x.length; i++) {
+            double w = 2 * Math.PI * frequency * i / rate;
+            re += x[i] * Math.cos(w);
+            im += x[i] * Math.sin(w);
+        }
+        return 2 * Math.hypot(re, im) / n;
+    }
+}
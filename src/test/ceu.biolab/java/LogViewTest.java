@@ -0,0 +1,31 @@
+package ceu.biolab.java;
+
+import ceu.biolab.LogView;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LogViewTest {
+
+    @Test
+    void append_keepsTheLatestLinesWithinTheCap() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            JTextArea area = new JTextArea();
+            LogView log = new LogView(area, 100);
+            for (int i = 0; i < 20_000; i++) {
+                log.append("line " + i + "\n");
+            }
+            assertThat(area.getLineCount() - 1).isBetween(100, 110);
+            String[] lines = area.getText().split("\n");
+            assertEquals("line 19999", lines[lines.length - 1]);
+            assertEquals(area.getDocument().getLength(), area.getCaretPosition());
+
+            log.setMaxLines(10);
+            assertEquals(10, area.getText().split("\n").length);
+            assertThat(area.getText()).startsWith("line 19990\n");
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package ceu.biolab.java;
+
+import ceu.biolab.MinMaxPyramid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MinMaxPyramidTest {
+
+    @Test
+    void minMaxAtEveryLevel_matchesABruteForceScanOfTheBuckets() {
+        Random random = new Random(5);
+        int capacity = 64;
+        MinMaxPyramid pyramid = new MinMaxPyramid(capacity);
+        int[] history = new int[10_000];
+        int[] out = new int[2];
+        for (int n = 0; n < history.length; n++) {
+            history[n] = (int) (400 * Math.sin(n / 50.0)) + random.nextInt(101) - 50;
+            pyramid.add(history[n]);
+            if (n % 97 != 0) {
+                continue;
+            }
+            long size = n + 1;
+            assertEquals(size, pyramid.size());
+            for (int level = 0; level < pyramid.levels(); level++) {
+                long oldest = pyramid.oldest(level);
+                long from = oldest + random.nextInt((int) (size - oldest));
+                long to = from + 1 + random.nextInt((int) (size - from));
+                assertTrue(pyramid.minMax(from, to, level, out));
+
+                // exact over the range, at most the whole buckets of the level around it
+                long bucket = 1L << level;
+                int[] exact = extremes(history, from, to);
+                int[] widest = extremes(history, from / bucket * bucket, Math.min(size, ((to - 1) / bucket + 1) * bucket));
+                String where = " at level " + level + " of " + from + "-" + to;
+                assertThat(out[0]).as("min" + where).isBetween(widest[0], exact[0]);
+                assertThat(out[1]).as("max" + where).isBetween(exact[1], widest[1]);
+                if (from % bucket == 0 && (to % bucket == 0 || to == size)) {
+                    assertEquals(exact[0], out[0], "aligned min" + where);
+                    assertEquals(exact[1], out[1], "aligned max" + where);
+                }
+            }
+        }
+
+        // one ring per level: the levels grow with the logarithm of the length only
+        assertThat(pyramid.levels()).isLessThanOrEqualTo(64 - Long.numberOfLeadingZeros(history.length));
+        // the start of the session is only kept on the coarser levels
+        int whole = pyramid.levelFor(1, 0);
+        assertEquals(0, pyramid.oldest(whole));
+        assertThat(pyramid.oldest(whole - 1)).isPositive();
+        assertEquals(0, pyramid.levelFor(1, history.length - capacity));
+        assertEquals(3, pyramid.levelFor(10, history.length - capacity));
+    }
+
+    private static int[] extremes(int[] values, long from, long to) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (long i = from; i < to; i++) {
+            min = Math.min(min, values[(int) i]);
+            max = Math.max(max, values[(int) i]);
+        }
+        return new int[]{min, max};
+    }
+}
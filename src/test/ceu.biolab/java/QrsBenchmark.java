@@ -0,0 +1,103 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BinaryRecordingReader;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.QrsDetector;
+import ceu.biolab.RecordingHeader;
+
+import java.io.File;
+import java.util.Arrays;
+
+/// Validates QrsDetector and measures its cost.
+/// Without arguments, runs the detector on a SyntheticEcg with interference at 1000 Hz and reports how many of
+/// the known beats are found, false detections, the error on the R peak time and the share of one core used.
+/// Given a binary recording, runs it on the first channel and reports the beats and heart rate found.
+/// Usage: QrsBenchmark [minutes of signal | recording.bin]
+public class QrsBenchmark {
+
+    private static final int SAMPLING_RATE = 1000;
+    private static final int BLOCK_SIZE = 20;
+    /// Largest distance between a detected and a true R peak counted as a match, in s
+    private static final double MATCH_SECONDS = 0.050;
+    /// Start of the signal in which QrsDetector reports no beats, in s
+    private static final double LEARNING_SECONDS = 2.5;
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length > 0 && args[0].endsWith(".bin")) {
+            recording(new File(args[0]));
+            return;
+        }
+        int minutes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        SyntheticEcg ecg = new SyntheticEcg(72, 0.15, 1).withInterference(40, 20, 50, 10);
+        int nSamples = minutes * 60 * SAMPLING_RATE;
+        short[] signal = new short[nSamples];
+        for (int n = 0; n < nSamples; n++) {
+            signal[n] = (short) ecg.sample(0, n, SAMPLING_RATE);
+        }
+
+        long[] detected = new long[nSamples / 100];
+        int[] count = {0};
+        QrsDetector detector = new QrsDetector(SAMPLING_RATE, (sample, bpm, averageBpm) -> detected[count[0]++] = sample);
+        long t0 = System.nanoTime();
+        for (int from = 0; from < nSamples; from += BLOCK_SIZE) {
+            detector.process(signal, from, BLOCK_SIZE);
+        }
+        long elapsed = System.nanoTime() - t0;
+
+        // the beats of the learning period and of the last half second (maybe not reported yet) are left out
+        double end = minutes * 60 - 0.5;
+        double[] truth = ecg.beatsUntil(end);
+        int compared = 0;
+        for (int j = 0; j < count[0]; j++) {
+            double t = detected[j] / (double) SAMPLING_RATE;
+            compared += t >= LEARNING_SECONDS && t <= end ? 1 : 0;
+        }
+        int found = 0;
+        int expected = 0;
+        double maxError = 0;
+        for (double t : truth) {
+            if (t < LEARNING_SECONDS) {
+                continue;
+            }
+            expected++;
+            long r = Math.round(t * SAMPLING_RATE);
+            int i = Arrays.binarySearch(detected, 0, count[0], r);
+            i = i < 0 ? -i - 1 : i;
+            long nearest = Long.MAX_VALUE;
+            for (int j = Math.max(0, i - 1); j <= Math.min(count[0] - 1, i); j++) {
+                nearest = Math.abs(detected[j] - r) < Math.abs(nearest - r) ? detected[j] : nearest;
+            }
+            double error = Math.abs(nearest - r) / (double) SAMPLING_RATE;
+            if (error <= MATCH_SECONDS) {
+                found++;
+                maxError = Math.max(maxError, error);
+            }
+        }
+        System.out.printf("%d min of synthetic ECG at %d Hz: %d of %d beats found, %d false detections%n",
+                minutes, SAMPLING_RATE, found, expected, compared - found);
+        System.out.printf("R peak error: max %.1f ms; heart rate %.1f bpm%n", maxError * 1000, detector.getHeartRate());
+        System.out.printf("cost: %.1f ns per sample, %.4f%% of a core per channel%n",
+                elapsed / (double) nSamples, elapsed * 100.0 / (minutes * 60e9));
+    }
+
+    private static void recording(File file) throws Throwable {
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(file)) {
+            RecordingHeader header = reader.getHeader();
+            QrsDetector detector = new QrsDetector(header.getSamplingRate(), null);
+            FrameBlock chunk = new FrameBlock(header.getChannels(), header.getChunkFrames());
+            long samples = 0;
+            long t0 = System.nanoTime();
+            for (int c = 0; c < reader.getChunkCount(); c++) {
+                reader.readChunk(c, chunk);
+                detector.process(chunk.analog(0), 0, chunk.size());
+                samples += chunk.size();
+            }
+            long elapsed = System.nanoTime() - t0;
+            double seconds = samples / (double) header.getSamplingRate();
+            System.out.printf("%s: %.1f s, %d beats (%.1f bpm on average), last heart rate %.1f bpm%n",
+                    file.getName(), seconds, detector.getBeats(), 60 * detector.getBeats() / Math.max(1e-9, seconds - LEARNING_SECONDS),
+                    detector.getHeartRate());
+            System.out.printf("decoding and detection: %.1f ms%n", elapsed / 1e6);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.BinaryRecordingReader;
+import ceu.biolab.BinaryRecordingWriter;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.QrsDetector;
+import ceu.biolab.RecordingHeader;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QrsDetectorTest {
+
+    @ParameterizedTest
+    @CsvSource({"1000, 45", "1000, 72", "1000, 150", "100, 72"})
+    void everyBeatOfANoisySimulatedEcgIsFound(int rate, int bpm) throws Throwable {
+        SyntheticEcg ecg = new SyntheticEcg(bpm, 0.15, bpm).withInterference(40, 20, 50, 10);
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform(ecg);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", rate);
+        bitalino.start(new int[]{1});
+
+        List<Long> beats = new ArrayList<>();
+        List<Double> averages = new ArrayList<>();
+        QrsDetector detector = new QrsDetector(rate, (sample, instant, average) -> {
+            beats.add(sample);
+            averages.add(average);
+        });
+        int seconds = 60;
+        int block = Math.max(1, rate / 50);
+        for (int n = 0; n < seconds * rate; n += block) {
+            FrameBlock frames = bitalino.readBlock(block);
+            detector.process(frames.analog(0), 0, frames.size());
+        }
+        bitalino.stop();
+        bitalino.close();
+
+        // every beat after the learning period, once, within 15 ms of the true R peak
+        double end = seconds - 0.5;
+        List<Double> truth = new ArrayList<>();
+        for (double t : ecg.beatsUntil(end)) {
+            if (t >= 2.5) {
+                truth.add(t);
+            }
+        }
+        List<Long> compared = beats.stream().filter(r -> r >= 2.5 * rate && r <= end * rate).toList();
+        assertEquals(truth.size(), compared.size());
+        for (int i = 0; i < truth.size(); i++) {
+            assertThat(compared.get(i) / (double) rate).as("beat %d", i).isCloseTo(truth.get(i), within(0.015));
+        }
+        // the average follows the rate of the last beats
+        double lastRr = (truth.get(truth.size() - 1) - truth.get(truth.size() - 1 - QrsDetector.RR_AVERAGE))
+                / QrsDetector.RR_AVERAGE;
+        assertThat(detector.getHeartRate()).isCloseTo(60 / lastRr, within(60 / lastRr * 0.03));
+        assertThat(averages.get(0)).isNaN();
+    }
+
+    @Test
+    void recordedEcg_givesTheSameBeatsAsTheLiveStream(@TempDir Path dir) throws Throwable {
+        int rate = 1000;
+        SyntheticEcg ecg = new SyntheticEcg(80, 0.1, 9).withInterference(30, 15, 60, 8);
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform(ecg);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", rate);
+        bitalino.start(new int[]{1});
+
+        File file = dir.resolve("ecg.bin").toFile();
+        BinaryRecordingWriter writer = new BinaryRecordingWriter(file, new RecordingHeader(RecordingHeader.ENCODING_RICE,
+                rate, RecordingHeader.channelMask(new int[]{1}), "00:00:00:00:00:00", 0, 1000));
+        List<Long> live = new ArrayList<>();
+        QrsDetector liveDetector = new QrsDetector(rate, (sample, instant, average) -> live.add(sample));
+        for (int b = 0; b < 1500; b++) {
+            FrameBlock frames = bitalino.readBlock(20);
+            writer.onBlock(frames);
+            liveDetector.process(frames.analog(0), 0, frames.size());
+        }
+        writer.onStop(null);
+        bitalino.stop();
+        bitalino.close();
+
+        List<Long> recorded = new ArrayList<>();
+        QrsDetector detector = new QrsDetector(rate, (sample, instant, average) -> recorded.add(sample));
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(file)) {
+            FrameBlock chunk = new FrameBlock(1, 1000);
+            for (int c = 0; c < reader.getChunkCount(); c++) {
+                reader.readChunk(c, chunk);
+                detector.process(chunk.analog(0), 0, chunk.size());
+            }
+        }
+
+        assertThat(recorded).hasSizeGreaterThan(30).isEqualTo(live);
+        assertEquals(liveDetector.getHeartRate(), detector.getHeartRate());
+    }
+}
@@ -0,0 +1,99 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.BinaryRecordingReader;
+import ceu.biolab.BinaryRecordingWriter;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.RecordingHeader;
+import ceu.biolab.SimulatedBITalino;
+import ceu.biolab.TxtFileSink;
+
+import java.io.File;
+import java.util.Random;
+
+/// Compares the size and the encoding/decoding cost of the recording formats (TXT, packed and compressed binary)
+/// on a synthetic biosignal (a few sines plus noise) sampled at 1000 Hz.
+/// Usage: RecordingBenchmark [seconds of signal] [nChannels]
+public class RecordingBenchmark {
+
+    private static final int SAMPLING_RATE = 1000;
+    private static final int BLOCK_SIZE = 20;
+
+    public static void main(String[] args) throws Throwable {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int nChannels = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+
+        int nBlocks = seconds * SAMPLING_RATE / BLOCK_SIZE;
+        FrameBlock[] blocks = new FrameBlock[64];
+        // the blocks come from the simulated device, as they would from a real one
+        Random noise = new Random(1);
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> {
+            double t = (double) sampleIndex / samplingRate;
+            double value = 512 + 250 * Math.sin(2 * Math.PI * 1.2 * t + channel)
+                    + 60 * Math.sin(2 * Math.PI * 17 * t) + noise.nextGaussian() * 3;
+            return (int) Math.max(0, Math.min(1023, Math.round(value)));
+        });
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", SAMPLING_RATE);
+        int[] channels = new int[nChannels];
+        for (int k = 0; k < nChannels; k++) {
+            channels[k] = k;
+        }
+        bitalino.start(channels);
+        for (int b = 0; b < blocks.length; b++) {
+            blocks[b] = bitalino.readBlock(BLOCK_SIZE);
+        }
+        bitalino.stop();
+        bitalino.close();
+
+        File txt = File.createTempFile("bench", ".txt");
+        File packed = File.createTempFile("bench", ".bin");
+        File rice = File.createTempFile("bench", ".bin");
+        try {
+            long t0 = System.nanoTime();
+            TxtFileSink txtSink = new TxtFileSink(txt, SAMPLING_RATE);
+            for (int b = 0; b < nBlocks; b++) {
+                txtSink.onBlock(blocks[b % blocks.length]);
+            }
+            txtSink.onStop(null);
+            report("TXT (channel 1 only)", txt, 1, nBlocks, System.nanoTime() - t0);
+
+            for (int encoding : new int[]{RecordingHeader.ENCODING_PACKED, RecordingHeader.ENCODING_RICE}) {
+                File file = encoding == RecordingHeader.ENCODING_PACKED ? packed : rice;
+                RecordingHeader header = new RecordingHeader(encoding, SAMPLING_RATE, (1 << nChannels) - 1,
+                        "00:00:00:00:00:00", System.currentTimeMillis(), BinaryRecordingWriter.DEFAULT_CHUNK_FRAMES);
+                t0 = System.nanoTime();
+                BinaryRecordingWriter writer = new BinaryRecordingWriter(file, header);
+                for (int b = 0; b < nBlocks; b++) {
+                    writer.onBlock(blocks[b % blocks.length]);
+                }
+                writer.onStop(null);
+                report(encoding == RecordingHeader.ENCODING_PACKED ? "packed" : "rice", file, nChannels, nBlocks,
+                        System.nanoTime() - t0);
+
+                t0 = System.nanoTime();
+                try (BinaryRecordingReader reader = new BinaryRecordingReader(file)) {
+                    FrameBlock chunk = new FrameBlock(nChannels, header.getChunkFrames());
+                    for (int c = 0; c < reader.getChunkCount(); c++) {
+                        reader.readChunk(c, chunk);
+                    }
+                }
+                long elapsed = System.nanoTime() - t0;
+                System.out.printf("    decoded in %.3f s (%.4f%% of real time)%n",
+                        elapsed / 1e9, elapsed / 1e7 / seconds);
+            }
+        } finally {
+            txt.delete();
+            packed.delete();
+            rice.delete();
+        }
+    }
+
+    private static void report(String name, File file, int nChannels, int nBlocks, long elapsed) {
+        long samples = (long) nBlocks * BLOCK_SIZE * nChannels;
+        double seconds = (double) nBlocks * BLOCK_SIZE / SAMPLING_RATE;
+        System.out.printf("%-22s %,12d bytes, %5.2f bits/sample, written in %.3f s (%.4f%% of real time)%n",
+                name, file.length(), file.length() * 8.0 / samples, elapsed / 1e9, elapsed / 1e7 / seconds);
+    }
+}
@@ -0,0 +1,142 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.BinaryRecordingReader;
+import ceu.biolab.BinaryRecordingWriter;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.RecordingExporter;
+import ceu.biolab.RecordingHeader;
+import ceu.biolab.SegmentedRecordingWriter;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordingExporterTest {
+
+    @Test
+    void moveAndCopy_keepTheContentAndReportProgress(@TempDir Path dir) throws Throwable {
+        byte[] content = new byte[3_000_000];
+        new Random(5).nextBytes(content);
+        Path source = dir.resolve("recording.tmp");
+        Files.write(source, content);
+
+        List<Long> updates = new ArrayList<>();
+        Path copy = dir.resolve("copy.txt");
+        RecordingExporter.copy(source, copy, (done, total) -> {
+            assertEquals(content.length, total);
+            updates.add(done);
+        });
+        assertThat(Files.readAllBytes(copy)).isEqualTo(content);
+        assertThat(updates).startsWith(0L).endsWith((long) content.length);
+
+        Path moved = dir.resolve("moved.txt");
+        Files.write(moved, new byte[]{1, 2, 3});
+        RecordingExporter.move(source, moved, (done, total) -> { });
+        assertFalse(Files.exists(source));
+        assertThat(Files.readAllBytes(moved)).isEqualTo(content);
+    }
+
+    @Test
+    void exportChannelCsv_writesOneFilePerChannel(@TempDir Path dir) throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> (int) ((sampleIndex + channel * 100) & 0x3F));
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 100);
+        int[] channels = {0, 4};
+        bitalino.start(channels);
+
+        File bin = dir.resolve("rec.bin").toFile();
+        BinaryRecordingWriter writer = new BinaryRecordingWriter(bin, new RecordingHeader(RecordingHeader.ENCODING_RICE,
+                100, RecordingHeader.channelMask(channels), "00:00:00:00:00:00", 0, 64));
+        for (int b = 0; b < 5; b++) {
+            FrameBlock block = bitalino.readBlock(50);
+            writer.onBlock(block);
+        }
+        writer.onStop(null);
+        bitalino.stop();
+        bitalino.close();
+
+        List<File> files = RecordingExporter.exportChannelCsv(bin, dir.resolve("rec.csv").toFile(), (done, total) -> { });
+
+        assertThat(files).extracting(File::getName).containsExactly("rec_A1.csv", "rec_A5.csv");
+        for (int k = 0; k < channels.length; k++) {
+            List<String> lines = Files.readAllLines(files.get(k).toPath());
+            assertEquals("100", lines.get(0));
+            assertEquals("sample,A" + (channels[k] + 1), lines.get(1));
+            assertEquals(2 + 250, lines.size());
+            for (int n = 0; n < 250; n++) {
+                assertEquals(n + "," + ((n + channels[k] * 100) & 0x3F), lines.get(2 + n));
+            }
+        }
+    }
+
+    @Test
+    void segmentedRecording_rotatesAndStitchesBackTogether(@TempDir Path dir) throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> (int) ((sampleIndex * 7 + channel) & 0x3FF));
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 100);
+        int[] channels = {0, 1};
+        bitalino.start(channels);
+
+        // 250 frames per segment round up to 300 (3 chunks); blocks of 37 straddle the segment boundaries
+        RecordingHeader header = new RecordingHeader(RecordingHeader.ENCODING_RICE, 100,
+                RecordingHeader.channelMask(channels), "00:00:00:00:00:00", 1_000_000, 100);
+        File segmentDir = Files.createDirectory(dir.resolve("segments")).toFile();
+        SegmentedRecordingWriter writer = new SegmentedRecordingWriter(segmentDir, "rec", header, 250);
+        int frames = 37 * 54;
+        for (int b = 0; b < 54; b++) {
+            writer.onBlock(bitalino.readBlock(37));
+        }
+        writer.onStop(null);
+        bitalino.stop();
+        bitalino.close();
+
+        assertEquals(300, writer.getSegmentFrames());
+        List<File> segments = writer.getSegments();
+        assertThat(segments).extracting(File::getName).startsWith("rec_0001.bin", "rec_0002.bin").hasSize(7);
+        try (BinaryRecordingReader third = new BinaryRecordingReader(segments.get(2))) {
+            // starts 600 frames (6 s at 100 Hz) into the recording
+            assertEquals(1_006_000, third.getHeader().getStartTimeMillis());
+            assertEquals(3, third.getChunkCount());
+        }
+
+        File stitched = dir.resolve("stitched.bin").toFile();
+        List<Long> updates = new ArrayList<>();
+        RecordingExporter.stitch(segments, stitched, (done, total) -> updates.add(done * 100 / total));
+        assertThat(updates).isSorted().endsWith(100L);
+
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(stitched)) {
+            assertEquals(1_000_000, reader.getHeader().getStartTimeMillis());
+            FrameBlock chunk = new FrameBlock(2, 100);
+            long n = 0;
+            for (int c = 0; c < reader.getChunkCount(); c++) {
+                assertEquals(n, reader.readChunk(c, chunk));
+                for (int i = 0; i < chunk.size(); i++, n++) {
+                    assertEquals((n * 7) & 0x3FF, chunk.getAnalog(0, i));
+                    assertEquals((n * 7 + 1) & 0x3FF, chunk.getAnalog(1, i));
+                }
+            }
+            assertEquals(frames, n);
+        }
+
+        // once stitched, the segments and their directory can go
+        assertTrue(writer.delete());
+        assertThat(segments).noneMatch(File::exists);
+        assertFalse(segmentDir.exists());
+        assertThat(writer.getSegments()).isEmpty();
+        assertTrue(stitched.exists());
+    }
+}
@@ -0,0 +1,79 @@
+package ceu.biolab.java;
+
+import ceu.biolab.AcquisitionEngine;
+import ceu.biolab.BITalino;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.FrameSink;
+import ceu.biolab.SampleClock;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SampleClockTest {
+
+    @Test
+    void driftIsRecoveredThroughJitteryBatchedArrivals() {
+        Random random = new Random(3);
+        int rate = 1000;
+        double driftPpm = 80;
+        long anchor = 5_000_000_000L;
+        SampleClock clock = new SampleClock(rate);
+        clock.anchor(anchor);
+
+        // blocks of 20 samples arriving 2...40 ms after the last one was taken by a slightly slow device
+        long samples = 0;
+        for (int block = 0; block < 10_000; block++) {
+            samples += 20;
+            double taken = anchor + samples * 1e6 * (1 + driftPpm / 1e6);
+            long delay = 2_000_000 + (random.nextInt(10) == 0 ? 0 : random.nextInt(38_000_000));
+            clock.observe(samples, Math.round(taken) + delay);
+        }
+
+        assertThat(clock.getWindows()).isGreaterThan(50);
+        assertThat(clock.getDriftPpm()).isCloseTo(driftPpm, within(2.0));
+        // 200 s into the recording the timestamps are off by the link delay at most, not by the 16 ms drift
+        long last = samples;
+        double taken = anchor + last * 1e6 * (1 + driftPpm / 1e6);
+        assertThat((double) clock.timeNanos(last)).isCloseTo(taken, within(1e6));
+        assertEquals(clock.timeNanos(last) - anchor, clock.seconds(last) * 1e9, 1);
+    }
+
+    @Test
+    void engineFeedsTheClockOfASimulatedDevice() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(true);
+        device.setClockError(2000);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0});
+
+        SampleClock clock = new SampleClock(1000, 200_000_000L);
+        AcquisitionEngine engine = new AcquisitionEngine(bitalino, 1, 20);
+        engine.setClock(clock);
+        engine.setMaxDuration(2500);
+        engine.addSink(new FrameSink() {
+            @Override
+            public void onBlock(FrameBlock block) {
+            }
+
+            @Override
+            public void onStop(Throwable error) {
+            }
+        });
+        engine.start();
+        while (engine.isRunning()) {
+            Thread.sleep(20);
+        }
+        engine.stop();
+        bitalino.stop();
+        bitalino.close();
+
+        assertThat(clock.isAnchored()).isTrue();
+        assertThat(clock.getWindows()).isGreaterThan(5);
+        assertThat(clock.getDriftPpm()).isCloseTo(2000, within(500.0));
+    }
+}
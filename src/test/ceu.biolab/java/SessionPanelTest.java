@@ -0,0 +1,65 @@
+package ceu.biolab.java;
+
+import ceu.biolab.SessionPanel;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionPanelTest {
+
+    private static int countPixels(SessionPanel panel, Color color) {
+        panel.setSize(600, 300);
+        BufferedImage image = new BufferedImage(600, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        panel.paint(g);
+        g.dispose();
+        int n = 0;
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                n += image.getRGB(x, y) == color.getRGB() ? 1 : 0;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    void laneMenu_showsAndHidesEachLane() {
+        SessionPanel panel = new SessionPanel();
+        panel.setChannels(new String[]{"A1", "A2"}, 100);
+        short[][] samples = new short[2][500];
+        for (int i = 0; i < 500; i++) {
+            samples[0][i] = (short) (i % 50);
+            samples[1][i] = (short) (i % 20 * 3);
+        }
+        panel.addSamples(samples, new byte[500], 500, 0);
+        Color a2 = new Color(0, 90, 200);
+        assertTrue(countPixels(panel, a2) > 0);
+
+        JPopupMenu menu = panel.createLaneMenu();
+        assertEquals(3, menu.getComponentCount());
+        JCheckBoxMenuItem a2Item = (JCheckBoxMenuItem) menu.getComponent(1);
+        JCheckBoxMenuItem digitalItem = (JCheckBoxMenuItem) menu.getComponent(2);
+        assertEquals("A2", a2Item.getText());
+        assertTrue(a2Item.isSelected());
+
+        a2Item.doClick();
+        digitalItem.doClick();
+        assertFalse(panel.isChannelVisible(1));
+        assertTrue(panel.isChannelVisible(0));
+        assertFalse(panel.isDigitalVisible());
+        assertEquals(0, countPixels(panel, a2));
+
+        // a new menu reflects the current state, and brings the lane back
+        JCheckBoxMenuItem again = (JCheckBoxMenuItem) panel.createLaneMenu().getComponent(1);
+        assertFalse(again.isSelected());
+        again.doClick();
+        assertTrue(panel.isChannelVisible(1));
+        assertTrue(countPixels(panel, a2) > 0);
+    }
+}
@@ -0,0 +1,79 @@
+package ceu.biolab.java;
+
+import ceu.biolab.SignalPanel;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignalPanelTest {
+
+    private static BufferedImage paint(SignalPanel panel, int width, int height) {
+        panel.setSize(width, height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        panel.paint(g);
+        g.dispose();
+        return image;
+    }
+
+    private static boolean isTrace(int rgb) {
+        Color c = new Color(rgb);
+        return c.getRed() > 150 && c.getGreen() < 100 && c.getBlue() < 100;
+    }
+
+    @Test
+    void everyPixelColumn_showsTheMinAndMaxOfItsSamples() {
+        SignalPanel panel = new SignalPanel();
+        panel.setWindow(8000);
+        paint(panel, 800, 300);
+
+        // a spike in every block of 10 samples: each pixel column must span the full range,
+        // however many samples were added before
+        short[] block = new short[1000];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (short) (i % 10 == 3 ? 1000 : 0);
+        }
+        for (int b = 0; b < 1000; b++) {
+            panel.addSamples(block, block.length);
+        }
+        BufferedImage image = paint(panel, 800, 300);
+
+        for (int x = 0; x < 800; x++) {
+            assertTrue(isTrace(image.getRGB(x, 150)), "column " + x);
+            assertTrue(isTrace(image.getRGB(x, 35)), "column " + x);
+            assertTrue(isTrace(image.getRGB(x, 265)), "column " + x);
+        }
+    }
+
+    @Test
+    void incrementalRendering_matchesAFullRedraw() {
+        SignalPanel panel = new SignalPanel();
+        panel.setWindow(5000);
+        paint(panel, 640, 200);
+
+        // a stable sine, painted every 17 samples as the display would
+        short[] batch = new short[17];
+        long n = 0;
+        BufferedImage incremental = null;
+        for (int b = 0; b < 800; b++) {
+            for (int i = 0; i < batch.length; i++, n++) {
+                batch[i] = (short) (512 + 400 * Math.sin(2 * Math.PI * n / 700.0));
+            }
+            panel.addSamples(batch, batch.length);
+            incremental = paint(panel, 640, 200);
+        }
+
+        // a resize forces the whole image to be redrawn
+        paint(panel, 641, 200);
+        BufferedImage full = paint(panel, 640, 200);
+        for (int x = 0; x < 640; x++) {
+            for (int y = 0; y < 200; y++) {
+                assertEquals(full.getRGB(x, y), incremental.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.BITalinoException;
+import ceu.biolab.BITalinoTransport;
+import ceu.biolab.Frame;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.GapFillingSink;
+import ceu.biolab.SimulatedBITalino;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SimulatedBITalinoTest {
+
+    private static int ramp(int channel, long sampleIndex, int samplingRate) {
+        return (int) ((sampleIndex * 7 + channel * 100) % 1024);
+    }
+
+    @Test
+    void read_decodesEveryChannelLayout() throws Throwable {
+        for (int nChannels = 1; nChannels <= 6; nChannels++) {
+            SimulatedBITalino device = new SimulatedBITalino(false);
+            device.setWaveform(SimulatedBITalinoTest::ramp);
+            BITalino bitalino = new BITalino(device);
+            bitalino.open("00:00:00:00:00:00", 1000);
+
+            int[] channels = new int[nChannels];
+            for (int i = 0; i < nChannels; i++) {
+                channels[i] = i;
+            }
+            bitalino.start(channels);
+            Frame[] frames = bitalino.read(50);
+
+            for (int n = 0; n < frames.length; n++) {
+                assertEquals(n & 0x0F, frames[n].seq, "seq with " + nChannels + " channels");
+                for (int k = 0; k < nChannels; k++) {
+                    int expected = ramp(k, n, 1000);
+                    assertEquals(k < 4 ? expected : expected >> 4, frames[n].analog[k],
+                            "A" + (k + 1) + " with " + nChannels + " channels");
+                }
+            }
+            bitalino.stop();
+            bitalino.close();
+        }
+    }
+
+    @Test
+    void commands_updateDeviceState() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 100);
+        assertEquals(100, device.getSamplingRate());
+
+        assertThat(bitalino.version()).startsWith("BITalino");
+
+        bitalino.battery(10);
+        assertEquals(10, device.getBatteryThreshold());
+
+        bitalino.start(new int[]{0, 1});
+        assertThat(device.isAcquiring()).isTrue();
+        bitalino.trigger(new int[]{1, 0, 0, 1});
+        assertEquals(0b1001, device.getDigitalOutputs());
+
+        Frame[] frames = bitalino.read(5);
+        assertEquals(1, frames[4].digital[0]);
+        assertEquals(1, frames[4].digital[3]);
+
+        bitalino.stop();
+        assertThat(device.isAcquiring()).isFalse();
+        bitalino.close();
+    }
+
+    @Test
+    void read_resynchronisesAfterCorruptedFrames() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) ->
+                (int) (channel == 0 ? sampleIndex & 0x3FF : (sampleIndex >> 10) & 0x3FF));
+        device.setCorruptionRate(0.01);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        List<Integer> skips = new ArrayList<>();
+        bitalino.setResyncListener(skips::add);
+        bitalino.start(new int[]{0, 1});
+
+        int consistent = 0;
+        int total = 0;
+        for (int block = 0; block < 100; block++) {
+            for (Frame f : bitalino.read(100)) {
+                long index = ((long) f.analog[1] << 10) | f.analog[0];
+                if ((index & 0x0F) == f.seq) {
+                    consistent++;
+                }
+                total++;
+            }
+        }
+
+        assertThat(bitalino.getResyncEvents()).isPositive();
+        assertEquals(skips.size(), bitalino.getResyncEvents());
+        assertEquals(skips.stream().mapToLong(Integer::longValue).sum(), bitalino.getSkippedBytes());
+        assertThat(consistent).isGreaterThan(total * 95 / 100);
+    }
+
+    @Test
+    void restartWithMoreChannels_resynchronisesWithSingleFrameBlocks() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform(SimulatedBITalinoTest::ramp);
+        device.setCorruptionRate(0.05);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 10);
+        bitalino.start(new int[]{0});
+        for (int n = 0; n < 20; n++) {
+            bitalino.readBlock(1);
+        }
+        bitalino.stop();
+
+        // the read buffer left by 1-channel frames must still hold a frame and a byte of 2-channel ones
+        long resyncs = bitalino.getResyncEvents();
+        bitalino.start(new int[]{0, 1});
+        for (int n = 0; n < 500; n++) {
+            assertEquals(2, bitalino.readBlock(1).channels());
+        }
+        assertThat(bitalino.getResyncEvents()).isGreaterThan(resyncs);
+        bitalino.stop();
+        bitalino.close();
+    }
+
+    @Test
+    void readBlock_holdsSameValuesAsFrames() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform(SimulatedBITalinoTest::ramp);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0, 1, 2});
+        bitalino.trigger(new int[]{0, 1, 1, 0});
+
+        FrameBlock block = bitalino.readBlock(40);
+        assertEquals(40, block.size());
+        assertEquals(3, block.channels());
+        for (int n = 0; n < block.size(); n++) {
+            Frame f = block.toFrame(n);
+            assertEquals(n & 0x0F, f.seq);
+            assertEquals(ramp(2, n, 1000), block.analog(2)[n]);
+            assertEquals(ramp(0, n, 1000), f.analog[0]);
+            assertEquals(1, f.digital[1]);
+            assertEquals(0, f.digital[3]);
+        }
+        bitalino.stop();
+        bitalino.close();
+    }
+
+    @Test
+    void open_silentDevice_failsAfterConnectTimeout() {
+        BITalino bitalino = new BITalino(new BITalinoTransport() {
+            public void open(String macAdd) {}
+            public InputStream openInputStream() { return InputStream.nullInputStream(); }
+            public OutputStream openOutputStream() { return OutputStream.nullOutputStream(); }
+            public void close() {}
+        });
+        bitalino.setConnectTimeout(300);
+
+        long t0 = System.currentTimeMillis();
+        assertThrows(BITalinoException.class, () -> bitalino.open("00:00:00:00:00:00", 1000));
+        assertThat(System.currentTimeMillis() - t0).isBetween(300L, 2000L);
+    }
+
+    @Test
+    void open_slowFirstAnswer_leavesNoRepliesToLaterProbesInTheStream() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform(SimulatedBITalinoTest::ramp);
+        device.setReplyDelay(600);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+
+        device.setReplyDelay(0);
+        assertEquals("BITalino_v5.1-sim", bitalino.version().trim());
+        bitalino.start(new int[]{0});
+        Frame[] frames = bitalino.read(100);
+        assertEquals(0, bitalino.getResyncEvents());
+        for (int n = 0; n < frames.length; n++) {
+            assertEquals(ramp(0, n, 1000), frames[n].analog[0]);
+        }
+        bitalino.stop();
+        bitalino.close();
+    }
+
+    @Test
+    void lostFrames_areCountedAndFilled() throws Throwable {
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> (int) sampleIndex);
+        device.setDropRate(0.05);
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{0});
+
+        List<Integer> filled = new ArrayList<>();
+        GapFillingSink sink = new GapFillingSink(block -> {
+            for (int i = 0; i < block.size(); i++) {
+                filled.add(block.getAnalog(0, i));
+            }
+        }, GapFillingSink.Mode.INTERPOLATE);
+
+        FrameBlock block = new FrameBlock(1, 50);
+        for (int n = 0; n < 16; n++) {
+            bitalino.read(block);
+            sink.onBlock(block);
+        }
+
+        assertThat(device.getFramesDropped()).isPositive();
+        assertEquals(device.getFramesDropped(), bitalino.getLostFrames());
+        assertEquals(device.getFramesDropped(), sink.getFilledFrames());
+        for (int n = 0; n < filled.size(); n++) {
+            assertEquals(filled.get(0) + n, filled.get(n), "sample " + n);
+        }
+    }
+}
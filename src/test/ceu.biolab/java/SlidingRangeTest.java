@@ -0,0 +1,42 @@
+package ceu.biolab.java;
+
+import ceu.biolab.SlidingRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SlidingRangeTest {
+
+    @Test
+    void minMaxAndPercentiles_matchABruteForceScan() {
+        Random random = new Random(11);
+        int window = 257;
+        SlidingRange range = new SlidingRange(window);
+        SlidingRange clipped = new SlidingRange(window);
+        clipped.setClipPercent(2);
+        int[] history = new int[20_000];
+        for (int n = 0; n < history.length; n++) {
+            // slow wander, noise and the occasional artifact
+            int value = (int) (500 + 300 * Math.sin(n / 900.0)) + random.nextInt(21) - 10;
+            if (random.nextInt(500) == 0) {
+                value = random.nextBoolean() ? 5000 : -5000;
+            }
+            history[n] = value;
+            range.add(value);
+            clipped.add(value);
+
+            int[] last = Arrays.copyOfRange(history, Math.max(0, n - window + 1), n + 1);
+            Arrays.sort(last);
+            assertEquals(last[0], range.min(), "min at " + n);
+            assertEquals(last[last.length - 1], range.max(), "max at " + n);
+            assertEquals(last[0], range.lower());
+            int lowRank = (int) Math.round(0.02 * (last.length - 1));
+            int highRank = (int) Math.round(0.98 * (last.length - 1));
+            assertEquals(last[lowRank], clipped.lower(), "lower at " + n);
+            assertEquals(last[highRank], clipped.upper(), "upper at " + n);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ceu.biolab.java;
+
+import ceu.biolab.SimulatedBITalino;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/// ECG-like waveform for SimulatedBITalino with known R peak times, to test and benchmark QRS detection.
+/// Every beat is a sum of Gaussian P, Q, R, S and T waves around its R peak; RR intervals vary randomly
+/// around the mean heart rate, and baseline wander, mains hum and noise can be added on top. The same
+/// waveform is produced on every channel.
+public class SyntheticEcg implements SimulatedBITalino.Waveform {
+
+    /// Waves of a beat: offset from the R peak (s), amplitude (ADC units) and width (s)
+    private static final double[][] WAVES = {
+            {-0.200, 15, 0.025},   // P
+            {-0.030, -25, 0.008},  // Q
+            {0, 260, 0.010},       // R
+            {0.030, -60, 0.010},   // S
+            {0.260, 45, 0.045}     // T
+    };
+    private static final int BASELINE = 512;
+
+    private final double meanRr;
+    private final double rrJitter;
+    private final Random random;
+    private double[] beats = new double[64];
+    private int nBeats = 0;
+
+    private double wanderAmplitude = 0;
+    private double mainsAmplitude = 0;
+    private double mainsHz = 50;
+    private double noiseAmplitude = 0;
+
+    /// \param[in] bpm Mean heart rate
+    /// \param[in] rrJitter Relative spread of the RR intervals (e.g. 0.1 for +-10%)
+    /// \param[in] seed Seed of the RR intervals
+    public SyntheticEcg(double bpm, double rrJitter, long seed) {
+        this.meanRr = 60 / bpm;
+        this.rrJitter = rrJitter;
+        this.random = new Random(seed);
+    }
+
+    /// Adds interference: baseline wander (0.3 Hz), mains hum and uniform noise, all in ADC units.
+    public SyntheticEcg withInterference(double wander, double mains, double mainsHz, double noise) {
+        this.wanderAmplitude = wander;
+        this.mainsAmplitude = mains;
+        this.mainsHz = mainsHz;
+        this.noiseAmplitude = noise;
+        return this;
+    }
+
+    /// Times of the R peaks in s, up to the given time.
+    public synchronized double[] beatsUntil(double seconds) {
+        generateUntil(seconds);
+        int n = 0;
+        while (n < nBeats && beats[n] <= seconds) {
+            n++;
+        }
+        return Arrays.copyOf(beats, n);
+    }
+
+    @Override
+    public synchronized int sample(int channel, long sampleIndex, int samplingRate) {
+        double t = sampleIndex / (double) samplingRate;
+        generateUntil(t + 1);
+        double v = BASELINE;
+        int first = Arrays.binarySearch(beats, 0, nBeats, t - 0.5);
+        for (int b = first < 0 ? -first - 1 : first; b < nBeats && beats[b] < t + 0.5; b++) {
+            for (double[] wave : WAVES) {
+                double x = (t - beats[b] - wave[0]) / wave[2];
+                v += wave[1] * Math.exp(-0.5 * x * x);
+            }
+        }
+        v += wanderAmplitude * Math.sin(2 * Math.PI * 0.3 * t);
+        v += mainsAmplitude * Math.sin(2 * Math.PI * mainsHz * t);
+        if (noiseAmplitude > 0) {
+            // deterministic per sample, whatever the order of the calls
+            long h = (sampleIndex + 1) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+            v += noiseAmplitude * ((h & 0xFFFF) / 32767.5 - 1);
+        }
+        return (int) Math.max(0, Math.min(1023, Math.round(v)));
+    }
+
+    private void generateUntil(double seconds) {
+        while (nBeats == 0 || beats[nBeats - 1] < seconds) {
+            double previous = nBeats == 0 ? 0.3 : beats[nBeats - 1];
+            double rr = nBeats == 0 ? 0 : meanRr * (1 + rrJitter * (2 * random.nextDouble() - 1));
+            if (nBeats == beats.length) {
+                beats = Arrays.copyOf(beats, nBeats * 2);
+            }
+            beats[nBeats++] = previous + rr;
+        }
+    }
+}
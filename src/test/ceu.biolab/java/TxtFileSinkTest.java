@@ -0,0 +1,63 @@
+package ceu.biolab.java;
+
+import ceu.biolab.BITalino;
+import ceu.biolab.FrameBlock;
+import ceu.biolab.SimulatedBITalino;
+import ceu.biolab.TxtFileSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TxtFileSinkTest {
+
+    @Test
+    void output_isByteIdenticalToTheLegacyWriter(@TempDir Path dir) throws Throwable {
+        Path actual = dir.resolve("actual.txt");
+        Path expected = dir.resolve("expected.txt");
+        Random random = new Random(3);
+        SimulatedBITalino device = new SimulatedBITalino(false);
+        device.setWaveform((channel, sampleIndex, samplingRate) -> switch ((int) (sampleIndex % 100)) {
+            case 0 -> 0;
+            case 1 -> 9;
+            case 2 -> 10;
+            case 3 -> 1023;
+            default -> random.nextInt(1024);
+        });
+        BITalino bitalino = new BITalino(device);
+        bitalino.open("00:00:00:00:00:00", 1000);
+        bitalino.start(new int[]{1, 2});
+
+        TxtFileSink sink = new TxtFileSink(actual.toFile(), 1000);
+        // legacy format: rate line, then Integer.toString() values joined by commas, then a new line
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(expected.toFile(), false))) {
+            writer.write(String.valueOf(1000));
+            writer.newLine();
+            boolean first = true;
+            // enough blocks to go through several buffer flushes
+            for (int b = 0; b < 200; b++) {
+                FrameBlock block = bitalino.readBlock(137);
+                for (int i = 0; i < block.size(); i++) {
+                    if (!first) {
+                        writer.write(",");
+                    }
+                    writer.write(Integer.toString(block.getAnalog(0, i)));
+                    first = false;
+                }
+                sink.onBlock(block);
+            }
+            writer.newLine();
+        }
+        sink.onStop(null);
+        bitalino.stop();
+        bitalino.close();
+
+        assertThat(Files.readAllBytes(actual)).isEqualTo(Files.readAllBytes(expected));
+    }
+}